@@ -0,0 +1,79 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The superclasses of a sample of classes up to SUPER_CLASS_DEPTH, as used by GetInBetweenClasses: the breadth first
+ * search over the parent arrays of a ClassHierarchy, against a walk that asks the reasoner for the direct
+ * superclasses along every path. To run on MP, pass -p ontology=file:/path/to/mp.owl.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AncestorWalkBenchmark {
+
+    @Param({"fixture", "synthetic:20000"})
+    public String ontology;
+
+    @Param({"1", "2", "3", "4", "5"})
+    public int depth;
+
+    private static final int SAMPLE = 500;
+
+    private OWLReasoner r;
+    private ClassHierarchy hierarchy;
+    private final List<OWLClass> sample = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        OWLOntology o = BenchmarkOntologies.load(ontology);
+        r = TaxonomySnapshot.createReasoner(o);
+        hierarchy = ClassHierarchy.fromReasoner(r);
+        List<OWLClass> classes = new ArrayList<>(o.getClassesInSignature());
+        classes.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        int step = Math.max(1, classes.size() / SAMPLE);
+        for (int i = 0; i < classes.size() && sample.size() < SAMPLE; i += step) {
+            sample.add(classes.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        r.dispose();
+    }
+
+    @Benchmark
+    public void frontierBfs(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(hierarchy.getSuperClasses(c, depth));
+        }
+    }
+
+    @Benchmark
+    public void reasonerWalk(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(walk(c, depth));
+        }
+    }
+
+    private Set<OWLClass> walk(OWLClass c, int depth) {
+        Set<OWLClass> superclasses = new HashSet<>();
+        if (depth > 0) {
+            for (OWLClass s : r.getSuperClasses(c, true).getFlattened()) {
+                superclasses.add(s);
+                superclasses.addAll(walk(s, depth - 1));
+            }
+        }
+        return superclasses;
+    }
+}
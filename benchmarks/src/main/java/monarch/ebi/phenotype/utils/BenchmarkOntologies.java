@@ -0,0 +1,106 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+
+/**
+ * Ontologies the benchmarks run on. "fixture" is a small hand-curated phenotype ontology shipped with the
+ * benchmarks, "synthetic:N" is a generated phenotype ontology with N phenotype classes. The generator is seeded,
+ * so the same N always produces the same ontology. "file:PATH" loads an ontology from disk, for example
+ * file:/data/mp.owl to benchmark on MP.
+ *
+ * Synthetic phenotypes are defined in the usual EQ shape, has_part some (Q and inheres_in_part_of some E), over
+ * a generated anatomy and a small set of qualities. They are arranged in a random DAG below UPHENO_0001001, and
+ * carry a label, an exact synonym, a definition and a source annotation on their asserted parent links.
+ */
+public class BenchmarkOntologies {
+
+    public static final String FIXTURE = "fixture";
+    public static final String SYNTHETIC = "synthetic:";
+    public static final String FILE = "file:";
+    private static final String FIXTURE_RESOURCE = "/fixtures/phenotype-fixture.ofn";
+    private static final long SEED = 42;
+    private static final int QUALITIES = 50;
+
+    private static final OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private static final OWLAnnotationProperty ap_exact_synonym = df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym"));
+    private static final OWLAnnotationProperty ap_definition = df.getOWLAnnotationProperty(IRI.create("http://purl.obolibrary.org/obo/IAO_0000115"));
+    private static final OWLAnnotationProperty ap_source = df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#source"));
+
+    public static OWLOntology load(String name) throws OWLOntologyCreationException, IOException {
+        if (name.equals(FIXTURE)) {
+            return fixture();
+        } else if (name.startsWith(SYNTHETIC)) {
+            return synthetic(Integer.valueOf(name.substring(SYNTHETIC.length())));
+        } else if (name.startsWith(FILE)) {
+            return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(name.substring(FILE.length())));
+        }
+        throw new IllegalArgumentException("Unknown benchmark ontology: " + name);
+    }
+
+    public static OWLOntology fixture() throws OWLOntologyCreationException, IOException {
+        try (InputStream in = BenchmarkOntologies.class.getResourceAsStream(FIXTURE_RESOURCE)) {
+            return OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(in);
+        }
+    }
+
+    public static OWLOntology synthetic(int phenotypes) throws OWLOntologyCreationException {
+        Random rnd = new Random(SEED);
+        OWLOntologyManager man = OWLManager.createOWLOntologyManager();
+        OWLOntology o = man.createOntology(IRI.create(Entities.OBOPURLSTRING + "upheno/benchmark-" + phenotypes + ".owl"));
+        Set<OWLAxiom> axioms = new HashSet<>();
+
+        List<OWLClass> qualities = new ArrayList<>();
+        for (int i = 0; i < QUALITIES; i++) {
+            OWLClass q = cl("PATO", i);
+            axioms.add(df.getOWLSubClassOfAxiom(q, Entities.cl_pato_quality));
+            label(axioms, q, "quality " + i);
+            qualities.add(q);
+        }
+
+        List<OWLClass> anatomy = new ArrayList<>();
+        anatomy.add(Entities.cl_uberon_anatomical_entity);
+        for (int i = 0; i < Math.max(1, phenotypes / 4); i++) {
+            OWLClass a = cl("UBERON", i);
+            axioms.add(df.getOWLSubClassOfAxiom(a, anatomy.get(rnd.nextInt(anatomy.size()))));
+            label(axioms, a, "anatomical structure " + i);
+            anatomy.add(a);
+        }
+
+        List<OWLClass> phenotype_classes = new ArrayList<>();
+        phenotype_classes.add(Entities.cl_upheno_phenotype);
+        for (int i = 0; i < phenotypes; i++) {
+            OWLClass p = cl("UPHENO", i);
+            int qi = rnd.nextInt(qualities.size());
+            int ei = rnd.nextInt(anatomy.size() - 1);
+            OWLClass q = qualities.get(qi);
+            OWLClass e = anatomy.get(1 + ei);
+            OWLClassExpression eq = df.getOWLObjectSomeValuesFrom(Entities.haspart, df.getOWLObjectIntersectionOf(q, df.getOWLObjectSomeValuesFrom(Entities.inheres_in_part_of, e)));
+            axioms.add(df.getOWLEquivalentClassesAxiom(p, eq));
+            int parents = 1 + (rnd.nextInt(4) == 0 ? 1 : 0);
+            for (int j = 0; j < parents; j++) {
+                OWLAnnotation source = df.getOWLAnnotation(ap_source, df.getOWLLiteral("MP:" + rnd.nextInt(1000)));
+                axioms.add(df.getOWLSubClassOfAxiom(p, phenotype_classes.get(rnd.nextInt(phenotype_classes.size())), Collections.singleton(source)));
+            }
+            label(axioms, p, "quality " + qi + " of anatomical structure " + ei);
+            axioms.add(df.getOWLAnnotationAssertionAxiom(ap_exact_synonym, p.getIRI(), df.getOWLLiteral("abnormal phenotype " + i)));
+            axioms.add(df.getOWLAnnotationAssertionAxiom(ap_definition, p.getIRI(), df.getOWLLiteral("A generated phenotype, number " + i + ".")));
+            phenotype_classes.add(p);
+        }
+        man.addAxioms(o, axioms);
+        return o;
+    }
+
+    private static OWLClass cl(String prefix, int i) {
+        return df.getOWLClass(IRI.create(Entities.OBOPURLSTRING + prefix + "_" + (9000000 + i)));
+    }
+
+    private static void label(Set<OWLAxiom> axioms, OWLClass c, String label) {
+        axioms.add(df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), c.getIRI(), df.getOWLLiteral(label)));
+    }
+}
@@ -0,0 +1,59 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Export.writeCSV and the streaming CSVWriter on records shaped like the output of the similarity and link
+ * comparison apps, including labels that need quoting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExportBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private final List<Map<String, String>> data = new ArrayList<>();
+    private File out;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Random rnd = new Random(42);
+        for (int i = 0; i < rows; i++) {
+            Map<String, String> rec = new HashMap<>();
+            rec.put("c1", Entities.OBOPURLSTRING + "MP_" + (1000000 + rnd.nextInt(100000)));
+            rec.put("c2", Entities.OBOPURLSTRING + "HP_" + (1000000 + rnd.nextInt(100000)));
+            rec.put("c1_label", "abnormal \"structure\" " + i + ", left");
+            rec.put("c2_label", "abnormality of structure " + i);
+            rec.put("jaccard", Double.toString(rnd.nextDouble()));
+            data.add(rec);
+        }
+        out = File.createTempFile("export-benchmark", ".csv");
+        out.deleteOnExit();
+    }
+
+    @Benchmark
+    public long writeCSV() {
+        Export.writeCSV(data, out);
+        return out.length();
+    }
+
+    @Benchmark
+    public long csvWriter() throws IOException {
+        try (CSVWriter writer = CSVWriter.sortedColumns(out, data.get(0).keySet())) {
+            for (Map<String, String> rec : data) {
+                writer.writeRecord(rec);
+            }
+        }
+        return out.length();
+    }
+}
@@ -0,0 +1,61 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GetInBetweenClasses.between for anatomy fillers: for a sample of anatomy classes, all legal classes between the
+ * class and the anatomy root.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GetInBetweenClassesBenchmark {
+
+    @Param({"fixture", "synthetic:2000", "synthetic:20000"})
+    public String ontology;
+
+    @Param({"1", "3"})
+    public int depth;
+
+    private static final int SAMPLE = 200;
+
+    private OWLReasoner r;
+    private GetInBetweenClasses fillers;
+    private final List<OWLClass> sample = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        OWLOntology o = BenchmarkOntologies.load(ontology);
+        r = TaxonomySnapshot.createReasoner(o);
+        fillers = new GetInBetweenClasses(Arrays.asList(Entities.OBOPURLSTRING + "UBERON_", Entities.OBOPURLSTRING + "PATO_"), depth);
+        List<OWLClass> anatomy = new ArrayList<>(r.getSubClasses(Entities.cl_uberon_anatomical_entity, false).getFlattened());
+        anatomy.removeAll(r.getUnsatisfiableClasses().getEntities());
+        anatomy.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        int step = Math.max(1, anatomy.size() / SAMPLE);
+        for (int i = 0; i < anatomy.size() && sample.size() < SAMPLE; i += step) {
+            sample.add(anatomy.get(i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        r.dispose();
+    }
+
+    @Benchmark
+    public void between(Blackhole bh) {
+        for (OWLClass e : sample) {
+            bh.consume(fillers.between(e, Entities.cl_uberon_anatomical_entity, r, true));
+        }
+    }
+}
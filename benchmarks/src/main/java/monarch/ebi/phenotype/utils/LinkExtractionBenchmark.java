@@ -0,0 +1,45 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the asserted links between the classes of an ontology, the first step of CompareOntologyLinksApp.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LinkExtractionBenchmark {
+
+    @Param({"fixture", "synthetic:2000", "synthetic:20000"})
+    public String ontology;
+
+    private OWLOntology o;
+    private Set<OWLClass> signature;
+    private CompareOntologyLinksApp app;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        o = BenchmarkOntologies.load(ontology);
+        signature = new HashSet<>(o.getClassesInSignature(Imports.INCLUDED));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetMetadata() {
+        app = new CompareOntologyLinksApp();
+    }
+
+    @Benchmark
+    public LinkSet getAllAssertedLinksBetweenEntities() {
+        return app.getAllAssertedLinksBetweenEntities(o, signature);
+    }
+}
@@ -0,0 +1,74 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per class lookups of OntologyUtils: the logical definition (indexed and by scanning all axioms), and the labels.
+ * Each invocation looks up a fixed sample of classes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class OntologyUtilsBenchmark {
+
+    @Param({"fixture", "synthetic:2000", "synthetic:20000"})
+    public String ontology;
+
+    private static final int SAMPLE = 100;
+
+    private OWLOntology o;
+    private final List<OWLClass> sample = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        o = BenchmarkOntologies.load(ontology);
+        List<OWLClass> classes = new ArrayList<>(o.getClassesInSignature(Imports.INCLUDED));
+        classes.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        int step = Math.max(1, classes.size() / SAMPLE);
+        for (int i = 0; i < classes.size() && sample.size() < SAMPLE; i += step) {
+            sample.add(classes.get(i));
+        }
+        // build the index outside of the measurement
+        DefinitionIndex.get(o);
+    }
+
+    @Benchmark
+    public void getEQ(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(OntologyUtils.getEQ(o, c));
+        }
+    }
+
+    @Benchmark
+    public void getEQByScan(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(OntologyUtils.getEQByScan(o, c));
+        }
+    }
+
+    @Benchmark
+    public void getHasAffectedEntity(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(OntologyUtils.getHasAffectedEntity(o, c));
+        }
+    }
+
+    @Benchmark
+    public void getLabels(Blackhole bh) {
+        for (OWLClass c : sample) {
+            bh.consume(OntologyUtils.getLabels(c, o));
+        }
+    }
+}
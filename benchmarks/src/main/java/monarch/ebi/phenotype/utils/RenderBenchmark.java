@@ -0,0 +1,51 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RenderManager.render over all logical definitions of the ontology, with the labels of the ontology loaded.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class RenderBenchmark {
+
+    @Param({"fixture", "synthetic:2000"})
+    public String ontology;
+
+    private final RenderManager ren = RenderManager.getInstance();
+    private final List<OWLAxiom> axioms = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        OWLOntology o = BenchmarkOntologies.load(ontology);
+        ren.clear();
+        ren.addLabel(o);
+        axioms.addAll(o.getAxioms(AxiomType.EQUIVALENT_CLASSES));
+    }
+
+    @Benchmark
+    public void render(Blackhole bh) {
+        for (OWLAxiom ax : axioms) {
+            bh.consume(ren.render(ax));
+        }
+    }
+
+    @Benchmark
+    public void renderManchester(Blackhole bh) {
+        for (OWLAxiom ax : axioms) {
+            bh.consume(ren.renderManchester(ax));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package monarch.ebi.phenotype.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * The scoring step of SimpleJaccardApp: all pairs above the cutoff, and the k best matches per class. The superclass
+ * sets are prepared the same way as in the app, all phenotypes are compared against all phenotypes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SimilarityBenchmark {
+
+    @Param({"synthetic:1000", "synthetic:5000"})
+    public String ontology;
+
+    @Param({"jaccard", "ic"})
+    public String metrics;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private static final double CUTOFF = 0.5;
+    private static final int TOP_K = 10;
+
+    private SimilarityEngine engine;
+    private List<OWLClass> phenotypes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        OWLDataFactory df = OWLManager.getOWLDataFactory();
+        OWLOntology o = BenchmarkOntologies.load(ontology);
+        OWLReasoner r = TaxonomySnapshot.createReasoner(o);
+        Set<OWLClass> phenotype = new HashSet<>(r.getSubClasses(Entities.cl_upheno_phenotype, false).getFlattened());
+        phenotype.removeAll(r.getUnsatisfiableClasses().getEntities());
+        phenotype.remove(df.getOWLThing());
+        Map<OWLClass, Set<OWLClass>> superClassCache = new HashMap<>();
+        for (OWLClass c : phenotype) {
+            Set<OWLClass> sc = r.getSuperClasses(c, false).getFlattened();
+            sc.add(c);
+            superClassCache.put(c, sc.stream().filter(phenotype::contains).collect(Collectors.toSet()));
+        }
+        r.dispose();
+        AncestorIndex index = new AncestorIndex(superClassCache);
+        InformationContent ic = metrics.equals("ic") ? InformationContent.fromDescendantCounts(index) : null;
+        engine = new SimilarityEngine(index, threads, ic);
+        phenotypes = phenotype.stream().sorted(Comparator.comparing(c -> c.getIRI().toString())).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Match> allPairs() {
+        return engine.allPairs(phenotypes, phenotypes, CUTOFF);
+    }
+
+    @Benchmark
+    public List<Match> topK() {
+        return engine.topK(phenotypes, phenotypes, CUTOFF, TOP_K);
+    }
+}
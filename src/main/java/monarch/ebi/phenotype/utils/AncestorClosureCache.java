@@ -0,0 +1,91 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memoizes the (indirect) superclasses of classes, as returned by r.getSuperClasses(c, false), in a cache of bounded
+ * size that evicts the least recently used class first. The cache can be shared by several threads; the superclasses
+ * of a class missing from the cache are computed outside of the lock, so concurrent misses do not block each other.
+ * Hit and miss counts are kept to help choosing the size of the cache.
+ */
+public class AncestorClosureCache {
+
+    public static final int DEFAULT_SIZE = 50000;
+
+    private final OWLReasoner r;
+    private final int max_size;
+    private final Map<OWLClass, Set<OWLClass>> cache;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public AncestorClosureCache(OWLReasoner r, int max_size) {
+        if (max_size < 1) {
+            throw new IllegalArgumentException("Cache size must be positive, but was " + max_size);
+        }
+        this.r = r;
+        this.max_size = max_size;
+        this.cache = new LinkedHashMap<OWLClass, Set<OWLClass>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<OWLClass, Set<OWLClass>> eldest) {
+                if (size() > AncestorClosureCache.this.max_size) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public OWLReasoner getReasoner() {
+        return r;
+    }
+
+    /**
+     * @return the unmodifiable set of all superclasses of the class, including owl:Thing.
+     */
+    public Set<OWLClass> getSuperClasses(OWLClass c) {
+        synchronized (this) {
+            Set<OWLClass> ancestors = cache.get(c);
+            if (ancestors != null) {
+                hits++;
+                return ancestors;
+            }
+            misses++;
+        }
+        Set<OWLClass> ancestors = Collections.unmodifiableSet(r.getSuperClasses(c, false).getFlattened());
+        synchronized (this) {
+            cache.put(c, ancestors);
+        }
+        return ancestors;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long lookups = hits + misses;
+        return "Ancestor cache: " + size() + "/" + max_size + " classes, " + hits + " hits, " + misses + " misses ("
+                + (lookups == 0 ? 0 : 100 * hits / lookups) + "% hit rate), " + evictions + " evictions";
+    }
+}
@@ -0,0 +1,204 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.*;
+
+/**
+ * Compact, read-only encoding of the (reflexive) superclass sets used by the similarity apps.
+ * Every class is assigned a dense integer id, and the ancestor set of each class is stored as a sparse
+ * bitset over these ids: only the non-zero 64 bit words are kept, together with their word index.
+ * Ids are handed out in order of increasing ancestor set size, so that the very general classes shared by
+ * most phenotypes end up in the same few words.
+ *
+ * Set operations like the size of the intersection of two ancestor sets are computed by merging the word
+ * indices and counting the bits of the AND-ed words, without allocating any objects.
+ */
+public class AncestorIndex {
+
+    private final Map<OWLClass, Integer> ids = new HashMap<>();
+    private final OWLClass[] classes;
+    private final int[][] wordIndex;
+    private final long[][] words;
+    private final int[] cardinality;
+
+    public AncestorIndex(Map<OWLClass, Set<OWLClass>> ancestors) {
+        Set<OWLClass> all = new HashSet<>(ancestors.keySet());
+        ancestors.values().forEach(all::addAll);
+        List<OWLClass> ordered = new ArrayList<>(all);
+        ordered.sort(Comparator.comparingInt((OWLClass c) -> ancestors.containsKey(c) ? ancestors.get(c).size() : 0).thenComparing(c -> c.getIRI().toString()));
+        classes = ordered.toArray(new OWLClass[0]);
+        for (int i = 0; i < classes.length; i++) {
+            ids.put(classes[i], i);
+        }
+
+        wordIndex = new int[classes.length][];
+        words = new long[classes.length][];
+        cardinality = new int[classes.length];
+        for (int i = 0; i < classes.length; i++) {
+            Set<OWLClass> sc = ancestors.get(classes[i]);
+            if (sc == null) {
+                wordIndex[i] = new int[0];
+                words[i] = new long[0];
+                continue;
+            }
+            int[] bits = new int[sc.size()];
+            int b = 0;
+            for (OWLClass c : sc) {
+                bits[b++] = ids.get(c);
+            }
+            Arrays.sort(bits);
+            encode(i, bits);
+        }
+    }
+
+    private void encode(int id, int[] sortedBits) {
+        int ct_words = 0;
+        int last = -1;
+        for (int bit : sortedBits) {
+            if ((bit >>> 6) != last) {
+                last = bit >>> 6;
+                ct_words++;
+            }
+        }
+        int[] wi = new int[ct_words];
+        long[] w = new long[ct_words];
+        int pos = -1;
+        last = -1;
+        for (int bit : sortedBits) {
+            if ((bit >>> 6) != last) {
+                last = bit >>> 6;
+                pos++;
+                wi[pos] = last;
+            }
+            w[pos] |= 1L << bit;
+        }
+        wordIndex[id] = wi;
+        words[id] = w;
+        cardinality[id] = sortedBits.length;
+    }
+
+    /**
+     * @return the dense id of the class, or -1 if the class is not known to the index.
+     */
+    public int id(OWLClass c) {
+        Integer id = ids.get(c);
+        return id == null ? -1 : id;
+    }
+
+    public OWLClass getOWLClass(int id) {
+        return classes[id];
+    }
+
+    public int size() {
+        return classes.length;
+    }
+
+    /**
+     * @return true if the class with the given id has a superclass set (not only appears as a superclass).
+     */
+    public boolean hasAncestors(int id) {
+        return cardinality[id] > 0;
+    }
+
+    public int cardinality(int id) {
+        return cardinality[id];
+    }
+
+    /**
+     * @return the ids of all ancestors of the class with the given id, in ascending order.
+     */
+    public int[] ancestors(int id) {
+        int[] ancestors = new int[cardinality[id]];
+        int pos = 0;
+        for (int i = 0; i < wordIndex[id].length; i++) {
+            long w = words[id][i];
+            while (w != 0) {
+                ancestors[pos++] = (wordIndex[id][i] << 6) + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+            }
+        }
+        return ancestors;
+    }
+
+    public int intersectionCardinality(int a, int b) {
+        int[] wa = wordIndex[a];
+        int[] wb = wordIndex[b];
+        long[] va = words[a];
+        long[] vb = words[b];
+        int i = 0;
+        int j = 0;
+        int ct = 0;
+        while (i < wa.length && j < wb.length) {
+            if (wa[i] < wb[j]) {
+                i++;
+            } else if (wa[i] > wb[j]) {
+                j++;
+            } else {
+                ct += Long.bitCount(va[i] & vb[j]);
+                i++;
+                j++;
+            }
+        }
+        return ct;
+    }
+
+    /**
+     * Walks the intersection of the ancestor sets of the two classes once, and writes the sum and the maximum of the
+     * weights of the shared ancestors into out[offset] and out[offset + 1].
+     *
+     * @param weights one weight per class id
+     * @return the size of the intersection
+     */
+    public int intersectionWeights(int a, int b, double[] weights, double[] out, int offset) {
+        int[] wa = wordIndex[a];
+        int[] wb = wordIndex[b];
+        long[] va = words[a];
+        long[] vb = words[b];
+        int i = 0;
+        int j = 0;
+        int ct = 0;
+        double sum = 0.0;
+        double max = 0.0;
+        while (i < wa.length && j < wb.length) {
+            if (wa[i] < wb[j]) {
+                i++;
+            } else if (wa[i] > wb[j]) {
+                j++;
+            } else {
+                long w = va[i] & vb[j];
+                while (w != 0) {
+                    double weight = weights[(wa[i] << 6) + Long.numberOfTrailingZeros(w)];
+                    sum += weight;
+                    if (weight > max) {
+                        max = weight;
+                    }
+                    ct++;
+                    w &= w - 1;
+                }
+                i++;
+                j++;
+            }
+        }
+        out[offset] = sum;
+        out[offset + 1] = max;
+        return ct;
+    }
+
+    public int unionCardinality(int a, int b) {
+        return cardinality[a] + cardinality[b] - intersectionCardinality(a, b);
+    }
+
+    /**
+     * Jaccard similarity |intersection| / |union| of the ancestor sets of the two classes. Returns 0.0 if either of
+     * the two classes has no ancestor set.
+     */
+    public double jaccard(int a, int b) {
+        if (!(hasAncestors(a) && hasAncestors(b))) {
+            return 0.0;
+        }
+        int intersection = intersectionCardinality(a, b);
+        int union = cardinality[a] + cardinality[b] - intersection;
+        return (double) intersection / (double) union;
+    }
+}
@@ -0,0 +1,58 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+/**
+ * The literal values of all annotation assertions in the imports closure of an ontology, bucketed by annotation
+ * property and subject IRI. The index is built in a single pass over the annotation assertion axioms, and answers
+ * the label, synonym, description and deprecation lookups of OntologyUtils with one hash lookup per property,
+ * instead of one EntitySearcher query per property and ontology.
+ */
+public class AnnotationIndex {
+
+    private static final OntologyIndexCache<AnnotationIndex> cache = new OntologyIndexCache<>(AnnotationIndex::new);
+    private static final String[] NONE = new String[0];
+
+    private final Map<OWLAnnotationProperty, Map<IRI, String[]>> values = new HashMap<>();
+
+    private AnnotationIndex(OWLOntology o) {
+        Map<OWLAnnotationProperty, Map<IRI, Set<String>>> collected = new HashMap<>();
+        for (OWLOntology i : o.getImportsClosure()) {
+            for (OWLAnnotationAssertionAxiom ax : i.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+                if (ax.getSubject() instanceof IRI && ax.getValue() instanceof OWLLiteral) {
+                    collected.computeIfAbsent(ax.getProperty(), k -> new HashMap<>())
+                            .computeIfAbsent((IRI) ax.getSubject(), k -> new LinkedHashSet<>(2))
+                            .add(((OWLLiteral) ax.getValue()).getLiteral());
+                }
+            }
+        }
+        for (Map.Entry<OWLAnnotationProperty, Map<IRI, Set<String>>> p : collected.entrySet()) {
+            Map<IRI, String[]> by_subject = new HashMap<>(p.getValue().size() * 4 / 3 + 1);
+            for (Map.Entry<IRI, Set<String>> s : p.getValue().entrySet()) {
+                by_subject.put(s.getKey(), s.getValue().toArray(NONE));
+            }
+            values.put(p.getKey(), by_subject);
+        }
+    }
+
+    /**
+     * @return the index for the ontology, built on first use and rebuilt after the ontology or its imports changed.
+     */
+    public static AnnotationIndex get(OWLOntology o) {
+        return cache.get(o);
+    }
+
+    /**
+     * @return the distinct literal values of the property on the entity. The array must not be modified.
+     */
+    public String[] getValues(OWLEntity e, OWLAnnotationProperty p) {
+        Map<IRI, String[]> by_subject = values.get(p);
+        if (by_subject == null) {
+            return NONE;
+        }
+        String[] v = by_subject.get(e.getIRI());
+        return v == null ? NONE : v;
+    }
+}
@@ -8,7 +8,6 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.io.FileUtils;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLClass;
@@ -31,7 +30,7 @@ public class App {
 		System.out.println("Extracting signatures of definitions related to " + phenoclass);
 		System.out.println("Loading ontology: " + ontology);
 		OWLOntology o = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(ontology));
-		OWLReasoner r = new ElkReasonerFactory().createReasoner(o);
+		OWLReasoner r = TaxonomySnapshot.createReasoner(o);
 		System.out.println("Initialising ELK..");
 		Set<OWLClass> signature = new HashSet<>();
 		if (phenoclass.equals("all")) {
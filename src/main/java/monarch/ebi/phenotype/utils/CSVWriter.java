@@ -0,0 +1,107 @@
+package monarch.ebi.phenotype.utils;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming CSV writer. The header is fixed when the writer is created, and rows are written through a buffer
+ * as they are produced, so that the size of the output does not matter for the heap.
+ * Fields are quoted according to RFC 4180: fields containing a comma, a double quote or a line break are
+ * enclosed in double quotes, and double quotes inside them are escaped by doubling them. Rows end with "\n".
+ */
+public class CSVWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final List<String> columns;
+
+    public CSVWriter(File file, List<String> columns) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(FileUtils.openOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.columns = new ArrayList<>(columns);
+        writeRow(this.columns);
+    }
+
+    /**
+     * Creates a writer whose header consists of the given columns in alphabetical order.
+     */
+    public static CSVWriter sortedColumns(File file, Collection<String> columns) throws IOException {
+        List<String> sorted = new ArrayList<>(columns);
+        Collections.sort(sorted);
+        return new CSVWriter(file, sorted);
+    }
+
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * Writes one row with the values of the record in the order of the header. Columns that are not in the record
+     * are left empty, keys that are not in the header are ignored.
+     */
+    public void writeRecord(Map<String, String> rec) throws IOException {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String value = rec.get(columns.get(i));
+            if (value != null) {
+                writeField(value);
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Writes one row with the given values, which are expected to be in the order of the header.
+     */
+    public void writeRow(List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (values.get(i) != null) {
+                writeField(values.get(i));
+            }
+        }
+        out.write('\n');
+    }
+
+    private void writeField(String value) throws IOException {
+        if (needsQuotes(value)) {
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"') {
+                    out.write('"');
+                }
+                out.write(c);
+            }
+            out.write('"');
+        } else {
+            out.write(value);
+        }
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,165 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.*;
+
+/**
+ * Read-only view of the inferred class hierarchy of a {@link TaxonomySnapshot}: every class has a dense id, and the
+ * equivalence nodes of the hierarchy are linked to their direct parents by adjacency arrays. The superclasses of a
+ * class up to a given depth are found with a breadth first search over the parent arrays that visits every node at
+ * most once, in time linear in the number of nodes and edges reached: the visited nodes are marked in a scratch array
+ * that every thread allocates once and then reuses across searches. Can be shared by any number of threads.
+ */
+public class ClassHierarchy {
+
+    private static final OWLClass THING = OWLManager.getOWLDataFactory().getOWLThing();
+
+    private final OWLClass[] classes;
+    private final Map<OWLClass, Integer> ids = new HashMap<>();
+    private final int[] node_of;
+    private final int[][] members;
+    private final int[][] parents;
+    private final int bottom;
+    private final ThreadLocal<VisitedNodes> visited_nodes;
+
+    public ClassHierarchy(TaxonomySnapshot snapshot) {
+        this.classes = snapshot.getClasses();
+        this.members = snapshot.getMembers();
+        this.parents = snapshot.getParents();
+        this.bottom = snapshot.getBottom();
+        this.node_of = new int[classes.length];
+        this.visited_nodes = ThreadLocal.withInitial(() -> new VisitedNodes(members.length));
+        for (int i = 0; i < classes.length; i++) {
+            ids.put(classes[i], i);
+        }
+        for (int n = 0; n < members.length; n++) {
+            for (int c : members[n]) {
+                node_of[c] = n;
+            }
+        }
+    }
+
+    public static ClassHierarchy fromReasoner(OWLReasoner r) {
+        return new ClassHierarchy(TaxonomySnapshot.of(r));
+    }
+
+    /**
+     * @return the id of the class, or -1 if the class is not part of the hierarchy.
+     */
+    public int id(OWLClass c) {
+        Integer id = ids.get(c);
+        return id == null ? -1 : id;
+    }
+
+    public OWLClass getOWLClass(int id) {
+        return classes[id];
+    }
+
+    /**
+     * @return the number of classes in the hierarchy; ids range from 0 to size() - 1.
+     */
+    public int size() {
+        return classes.length;
+    }
+
+    public boolean isUnsatisfiable(OWLClass c) {
+        int id = id(c);
+        return id >= 0 && node_of[id] == bottom;
+    }
+
+    /**
+     * @return the superclasses of the class that are at most depth steps above it in the hierarchy, including
+     * the classes equivalent to those, but not the classes equivalent to the class itself. A class that is not part of
+     * the hierarchy only has owl:Thing as superclass.
+     */
+    public Set<OWLClass> getSuperClasses(OWLClass c, int depth) {
+        Set<OWLClass> superclasses = new HashSet<>();
+        int id = id(c);
+        if (depth <= 0) {
+            return superclasses;
+        }
+        if (id < 0) {
+            superclasses.add(THING);
+            return superclasses;
+        }
+        for (int a : getSuperClasses(id, depth)) {
+            superclasses.add(classes[a]);
+        }
+        return superclasses;
+    }
+
+    /**
+     * Like {@link #getSuperClasses(OWLClass, int)}, over class ids.
+     */
+    public int[] getSuperClasses(int id, int depth) {
+        int start = node_of[id];
+        VisitedNodes visited = visited_nodes.get();
+        visited.clear();
+        visited.visit(start);
+        int[] frontier = {start};
+        int ct_frontier = 1;
+        int[] next = new int[4];
+        int ct_classes = 0;
+        int[] superclasses = new int[4];
+        for (int level = 0; level < depth && ct_frontier > 0; level++) {
+            int ct_next = 0;
+            for (int f = 0; f < ct_frontier; f++) {
+                for (int p : parents[frontier[f]]) {
+                    if (!visited.visit(p)) {
+                        continue;
+                    }
+                    if (ct_next == next.length) {
+                        next = Arrays.copyOf(next, ct_next * 2);
+                    }
+                    next[ct_next++] = p;
+                    for (int m : members[p]) {
+                        if (ct_classes == superclasses.length) {
+                            superclasses = Arrays.copyOf(superclasses, ct_classes * 2);
+                        }
+                        superclasses[ct_classes++] = m;
+                    }
+                }
+            }
+            int[] swap = frontier;
+            frontier = next;
+            next = swap;
+            ct_frontier = ct_next;
+        }
+        return Arrays.copyOf(superclasses, ct_classes);
+    }
+
+    /*
+    The nodes visited by the current search are those marked with the current mark, so starting a new search only takes
+    a new mark instead of clearing the array.
+     */
+    private static final class VisitedNodes {
+        private final int[] marks;
+        private int mark = 0;
+
+        private VisitedNodes(int ct_nodes) {
+            this.marks = new int[ct_nodes];
+        }
+
+        private void clear() {
+            if (mark == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                mark = 0;
+            }
+            mark++;
+        }
+
+        /*
+        Returns true if the node was not visited yet by the current search.
+         */
+        private boolean visit(int node) {
+            if (marks[node] == mark) {
+                return false;
+            }
+            marks[node] = mark;
+            return true;
+        }
+    }
+}
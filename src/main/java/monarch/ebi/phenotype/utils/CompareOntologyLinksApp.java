@@ -9,7 +9,13 @@ import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Hello world!
@@ -20,42 +26,78 @@ public class CompareOntologyLinksApp {
     private final boolean allSignature;
     private final IRI subClassIRI = IRI.create("http://www.w3.org/2000/01/rdf-schema#subClassOf");
     private final int printStepSize = 1000;
+    private final int incoherenceBatchSize = 256;
 
     private final File data_out;
     private static final OWLDataFactory df = OWLManager.getOWLDataFactory();
     private final OWLAnnotationProperty sourceAp = df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#source"));
     private final OWLClass obsoleteClass = df.getOWLClass(IRI.create("http://www.geneontology.org/formats/oboInOwl#ObsoleteClass"));
     private final Map<LinkBetweenEntity,Map<String,Set<String>>> additionalMetadata = new HashMap<>();
+    private final LinkCodec codec = new LinkCodec();
     private final RenderManager ren = RenderManager.getInstance();
     private final OWLReasonerFactory rf;
+    private final int threads;
 
 
-    private CompareOntologyLinksApp(File ontology1_file, File ontology2_file, OWLReasonerFactory rf , boolean allSignature, File data_out) throws OWLOntologyCreationException {
+    private CompareOntologyLinksApp(File ontology1_file, File ontology2_file, OWLReasonerFactory rf , boolean allSignature, File data_out, int threads) throws OWLOntologyCreationException, IOException {
         this.ontology1_file = ontology1_file;
         this.ontology2_file = ontology2_file;
         this.data_out = data_out;
         this.allSignature = allSignature;
         this.rf = rf;
+        this.threads = threads;
         run();
     }
 
+    /*
+    Does not load or compare any ontologies. Used by the benchmarks.
+     */
+    CompareOntologyLinksApp() {
+        this.ontology1_file = null;
+        this.ontology2_file = null;
+        this.data_out = null;
+        this.allSignature = true;
+        this.rf = null;
+        this.threads = 1;
+    }
 
 
-    private String categoriseLink(LinkBetweenEntity l, OWLReasoner r, Set<LinkBetweenEntity> allLinks){
-        if(allLinks.contains(l)) {
-            return "asserted";
-        } else if(linkImplied(l,r)) {
-           return "inferred";
-        } else if(linkWouldCauseUnsatisfiability(l,r)) {
-            return "incoherent";
-        }
-        else {
-            return "none";
+
+    /*
+    Categorises all links in one ontology. The asserted and inferred links are determined in parallel on the pool the
+    calling task runs on. Queries to the reasoner are serialised on the reasoner, as reasoners are not guaranteed to
+    be thread safe, so the parallelism comes from classifying against both ontologies at once. The incoherence of all
+    remaining links is then checked in batches, which changes the ontology and must not run concurrently with any
+    other use of the reasoner.
+     */
+    private String[] categoriseLinks(long[] links, OWLReasoner r, LinkSet allLinks, String name){
+        String[] categories = new String[links.length];
+        AtomicInteger ct = new AtomicInteger();
+        IntStream.range(0,links.length).parallel().forEach(i->{
+            if(allLinks.contains(links[i])) {
+                categories[i] = "asserted";
+            } else if(linkImplied(codec.decode(links[i]),r)) {
+                categories[i] = "inferred";
+            }
+            int done = ct.incrementAndGet();
+            if(done % printStepSize == 0) {
+                log(name+": "+done+"/"+links.length+" processed.");
+            }
+        });
+        Map<OWLAxiom,Integer> candidates = new HashMap<>();
+        for(int i=0;i<categories.length;i++) {
+            if(categories[i]==null) {
+                candidates.put(getLinkAxiom(codec.decode(links[i])),i);
+            }
         }
+        IncoherenceChecker checker = new IncoherenceChecker(r,incoherenceBatchSize);
+        Set<OWLAxiom> incoherent = checker.getIncoherentAxioms(candidates.keySet());
+        candidates.forEach((ax,i)->categories[i] = incoherent.contains(ax) ? "incoherent" : "none");
+        log(name+": incoherence of "+candidates.size()+" links checked with "+checker.getClassifications()+" classifications ("+incoherent.size()+" incoherent).");
+        return categories;
     }
 
-    private void run() throws OWLOntologyCreationException {
-        List<Map<String,String>> data = new ArrayList<>();
+    private void run() throws OWLOntologyCreationException, IOException {
         OWLOntology o1 = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(ontology1_file));
         OWLOntology o2 = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(ontology2_file));
         OWLReasoner r1 = rf.createReasoner(o1);
@@ -72,14 +114,12 @@ public class CompareOntologyLinksApp {
         } else {
             signature.retainAll(o2_classes);
         }
-        Set<LinkBetweenEntity> linkBetweenEntityO1 = getAllAssertedLinksBetweenEntities(o1,signature);
-        Set<LinkBetweenEntity> linkBetweenEntityO2 = getAllAssertedLinksBetweenEntities(o2,signature);
-        Set<LinkBetweenEntity> union = new HashSet<>(linkBetweenEntityO1);
-        union.addAll(linkBetweenEntityO2);
-        Set<LinkBetweenEntity> intersection = new HashSet<>(linkBetweenEntityO1);
-        intersection.retainAll(linkBetweenEntityO2);
-        Set<LinkBetweenEntity> difference = new HashSet<>(union);
-        difference.removeAll(intersection);
+        LinkSet linkBetweenEntityO1 = getAllAssertedLinksBetweenEntities(o1,signature);
+        LinkSet linkBetweenEntityO2 = getAllAssertedLinksBetweenEntities(o2,signature);
+        codec.freeze();
+        LinkSet union = linkBetweenEntityO1.union(linkBetweenEntityO2);
+        LinkSet intersection = linkBetweenEntityO1.intersection(linkBetweenEntityO2);
+        LinkSet difference = union.difference(intersection);
         log("O1 classes: "+o1_classes.size()+" ("+o1_obsoleted_classes.size()+" obsolete)");
         log("O2 classes: "+o2_classes.size()+" ("+o2_obsoleted_classes.size()+" obsolete)");
         log("O1: "+linkBetweenEntityO1.size());
@@ -87,36 +127,58 @@ public class CompareOntologyLinksApp {
         log("Union: "+union.size());
         log("Intersection: "+intersection.size());
         log("Difference: "+difference.size());
-        int ct = 0;
-        for(LinkBetweenEntity l:union) {
-            ct++;
-            if(ct % printStepSize == 0) {
-                log(ct+"/"+union.size()+" processed.");
+        int shared_pairs = linkBetweenEntityO1.countSharedPairs(linkBetweenEntityO2);
+        int pairs_o1 = linkBetweenEntityO1.countPairs();
+        int pairs_o2 = linkBetweenEntityO2.countPairs();
+        log("O1 linked pairs: "+pairs_o1+" ("+linkBetweenEntityO1.countMultiRelationPairs()+" with more than one relation)");
+        log("O2 linked pairs: "+pairs_o2+" ("+linkBetweenEntityO2.countMultiRelationPairs()+" with more than one relation)");
+        log("Union linked pairs: "+(pairs_o1+pairs_o2-shared_pairs));
+        log("Intersection linked pairs: "+shared_pairs);
+        Set<String> columns = new HashSet<>(Arrays.asList("o1","o2","e1","e2","p","e1_label","e2_label","p_label","e1_sig","e2_sig","e1_obsolete","e2_obsolete","o1_link","o2_link","p_rewired","source"));
+        additionalMetadata.values().forEach(m->columns.addAll(m.keySet()));
+        long[] links = union.toArray();
+        codec.sortByIri(links);
+        String[] categories_o1;
+        String[] categories_o2;
+        log("Classifying links on "+threads+" threads.");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<String[]> task_o1 = pool.submit(() -> categoriseLinks(links, r1, linkBetweenEntityO1, "O1"));
+            ForkJoinTask<String[]> task_o2 = pool.submit(() -> categoriseLinks(links, r2, linkBetweenEntityO2, "O2"));
+            categories_o1 = task_o1.get();
+            categories_o2 = task_o2.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Link classification failed", e);
+        } finally {
+            pool.shutdown();
+        }
+        try(CSVWriter writer = CSVWriter.sortedColumns(data_out, columns)) {
+            for(int i=0;i<links.length;i++) {
+                LinkBetweenEntity l = codec.decode(links[i]);
+                Map<String,String> rec = new HashMap<>();
+                additionalMetadataToRec(l, rec);
+                OWLClass c1 = df.getOWLClass(l.e1);
+                OWLClass c2 = df.getOWLClass(l.e2);
+                OWLObjectProperty p = df.getOWLObjectProperty(l.relation);
+                rec.put("o1",ontology1_file.getName());
+                rec.put("o2",ontology2_file.getName());
+                rec.put("e1",l.e1.toString());
+                rec.put("e2",l.e2.toString());
+                rec.put("p",l.relation.toString());
+                rec.put("e1_label",RenderManager.getInstance().getLabel(c1));
+                rec.put("e2_label",RenderManager.getInstance().getLabel(c2));
+                rec.put("p_label",RenderManager.getInstance().getLabel(p));
+                rec.put("e1_sig",includedInOntology(o1_classes, o2_classes, c1));
+                rec.put("e2_sig",includedInOntology(o1_classes, o2_classes, c2));
+                rec.put("e1_obsolete",includedInOntology(o1_obsoleted_classes, o2_obsoleted_classes, c1));
+                rec.put("e2_obsolete",includedInOntology(o1_obsoleted_classes, o2_obsoleted_classes, c2));
+                String categorise_o1 = classifyEntity(categories_o1[i], linkBetweenEntityO1, links[i], rec);
+                String categorise_o2 = classifyEntity(categories_o2[i], linkBetweenEntityO2, links[i], rec);
+                rec.put("o1_link",categorise_o1);
+                rec.put("o2_link",categorise_o2);
+                writer.writeRecord(rec);
             }
-            Map<String,String> rec = new HashMap<>();
-            additionalMetadataToRec(l, rec);
-            OWLClass c1 = df.getOWLClass(l.e1);
-            OWLClass c2 = df.getOWLClass(l.e2);
-            OWLObjectProperty p = df.getOWLObjectProperty(l.relation);
-            rec.put("o1",ontology1_file.getName());
-            rec.put("o2",ontology2_file.getName());
-            rec.put("e1",l.e1.toString());
-            rec.put("e2",l.e2.toString());
-            rec.put("p",l.relation.toString());
-            rec.put("e1_label",RenderManager.getInstance().getLabel(c1));
-            rec.put("e2_label",RenderManager.getInstance().getLabel(c2));
-            rec.put("p_label",RenderManager.getInstance().getLabel(p));
-            rec.put("e1_sig",includedInOntology(o1_classes, o2_classes, c1));
-            rec.put("e2_sig",includedInOntology(o1_classes, o2_classes, c2));
-            rec.put("e1_obsolete",includedInOntology(o1_obsoleted_classes, o2_obsoleted_classes, c1));
-            rec.put("e2_obsolete",includedInOntology(o1_obsoleted_classes, o2_obsoleted_classes, c2));
-            String categorise_o1 = classifyEntity(r1, linkBetweenEntityO1, l, rec);
-            String categorise_o2 = classifyEntity(r2, linkBetweenEntityO2, l, rec);
-            rec.put("o1_link",categorise_o1);
-            rec.put("o2_link",categorise_o2);
-            data.add(rec);
         }
-        Export.writeCSV(data,data_out);
     }
 
     private void additionalMetadataToRec(LinkBetweenEntity l, Map<String, String> rec) {
@@ -170,13 +232,12 @@ public class CompareOntologyLinksApp {
         return false;
     }
 
-    private String classifyEntity(OWLReasoner r, Set<LinkBetweenEntity> linkBetweenEntities, LinkBetweenEntity l, Map<String, String> rec) {
-        String categorise = categoriseLink(l, r, linkBetweenEntities);
+    private String classifyEntity(String categorise, LinkSet links, long link, Map<String, String> rec) {
         if(categorise.equals("none")) {
-            Optional<LinkBetweenEntity> ol = getLinkDifferentRelation(l, linkBetweenEntities);
-            if(ol.isPresent()) {
+            long other = links.getLinkBetween(link);
+            if(other >= 0) {
                 categorise = "rewired";
-                rec.put("p_rewired",ol.get().relation.toString());
+                rec.put("p_rewired",codec.decode(other).relation.toString());
             }
         }
         return categorise;
@@ -196,47 +257,25 @@ public class CompareOntologyLinksApp {
         }
     }
 
-    private Optional<LinkBetweenEntity> getLinkDifferentRelation(LinkBetweenEntity l, Set<LinkBetweenEntity> set) {
-        for(LinkBetweenEntity l2:set) {
-            if(l.e1.equals(l2.e1) && l.e2.equals(l2.e2)) {
-                return Optional.of(l2);
-            }
-        }
-        return Optional.empty();
-    }
-
     private boolean linkImplied(LinkBetweenEntity l, OWLReasoner r) {
-        OWLAxiom ax;
-        if(l.relation.equals(subClassIRI)) {
-            ax = df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLClass(l.e2));
-        } else {
-            // we assume its and existential restricton.
-            ax = df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLObjectSomeValuesFrom(df.getOWLObjectProperty(l.relation),df.getOWLClass(l.e2)));
+        OWLAxiom ax = getLinkAxiom(l);
+        synchronized (r) {
+            return r.isEntailed(ax);
         }
-        return r.isEntailed(ax);
     }
 
-    private boolean linkWouldCauseUnsatisfiability(LinkBetweenEntity l, OWLReasoner r) {
-        Set<OWLAxiom> axiom = new HashSet<>(r.getRootOntology().getLogicalAxioms());
-        OWLAxiom ax;
+    private OWLAxiom getLinkAxiom(LinkBetweenEntity l) {
         if(l.relation.equals(subClassIRI)) {
-            ax = df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLClass(l.e2));
+            return df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLClass(l.e2));
         } else {
             // we assume its and existential restricton.
-            ax = df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLObjectSomeValuesFrom(df.getOWLObjectProperty(l.relation),df.getOWLClass(l.e2)));
+            return df.getOWLSubClassOfAxiom(df.getOWLClass(l.e1),df.getOWLObjectSomeValuesFrom(df.getOWLObjectProperty(l.relation),df.getOWLClass(l.e2)));
         }
-        axiom.add(ax);
-        r.getRootOntology().getOWLOntologyManager().addAxiom(r.getRootOntology(),ax);
-        r.flush();
-        boolean unsat= r.getUnsatisfiableClasses().getEntities().isEmpty();
-        r.getRootOntology().getOWLOntologyManager().removeAxiom(r.getRootOntology(),ax);
-        r.flush();
-        return unsat;
     }
 
     @SuppressWarnings("SuspiciousMethodCalls")
-    private Set<LinkBetweenEntity> getAllAssertedLinksBetweenEntities(OWLOntology o, Set<OWLClass> signature) {
-        Set<LinkBetweenEntity> links = new HashSet<>();
+    LinkSet getAllAssertedLinksBetweenEntities(OWLOntology o, Set<OWLClass> signature) {
+        LinkSet.Builder links = new LinkSet.Builder(codec);
         for(OWLAxiom ax:o.getLogicalAxioms()) {
             if(ax instanceof OWLSubClassOfAxiom) {
                 OWLSubClassOfAxiom sax = (OWLSubClassOfAxiom)ax;
@@ -264,10 +303,13 @@ public class CompareOntologyLinksApp {
                 }
             }
         }
-        return links;
+        return links.build();
     }
 
     private void addMetadata(LinkBetweenEntity l, String k, String v) {
+        if(v.isEmpty()) {
+            return;
+        }
         if(!additionalMetadata.containsKey(l)) {
             additionalMetadata.put(l,new HashMap<>());
         }
@@ -304,13 +346,14 @@ public class CompareOntologyLinksApp {
     }
 
 
-    public static void main(String[] args) throws OWLOntologyCreationException {
+    public static void main(String[] args) throws OWLOntologyCreationException, IOException {
 
         String ontology1_path = args[0];
         String ontology2_path = args[1];
         boolean all_signature = args[2].equals("all");
         String reasoner = args[3];
         String data_out = args[4];
+        int threads = args.length > 5 ? Integer.valueOf(args[5]) : Runtime.getRuntime().availableProcessors();
 
 
 
@@ -338,7 +381,7 @@ public class CompareOntologyLinksApp {
         File ontology2_file = new File(ontology2_path);
         File ontology_out = new File(data_out);
 
-        new CompareOntologyLinksApp(ontology1_file, ontology2_file, rf, all_signature, ontology_out);
+        new CompareOntologyLinksApp(ontology1_file, ontology2_file, rf, all_signature, ontology_out, threads);
     }
 
 }
@@ -0,0 +1,65 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class to definition lookups of {@link OntologyUtils#getEQ(OWLOntology, OWLClass)} and
+ * {@link OntologyUtils#getHasAffectedEntity(OWLOntology, OWLClass)}, built in a single pass over the ontology.
+ * As with the scans, a class with more than one candidate definition is mapped to the first one encountered.
+ */
+public class DefinitionIndex {
+
+    private static final OntologyIndexCache<DefinitionIndex> cache = new OntologyIndexCache<>(DefinitionIndex::new);
+
+    private final Map<OWLClass, OWLClassExpression> eq = new HashMap<>();
+    private final Map<OWLClass, OWLClassExpression> affected_entity = new HashMap<>();
+
+    private DefinitionIndex(OWLOntology o) {
+        for (OWLEquivalentClassesAxiom ax : o.getAxioms(AxiomType.EQUIVALENT_CLASSES)) {
+            OWLClassExpression definition = null;
+            for (OWLClassExpression ce : ax.getClassExpressions()) {
+                if (ce.isAnonymous()) {
+                    definition = ce;
+                    break;
+                }
+            }
+            if (definition != null) {
+                for (OWLClass c : ax.getNamedClasses()) {
+                    eq.putIfAbsent(c, definition);
+                }
+            }
+        }
+        for (OWLOntology i : o.getImportsClosure()) {
+            for (OWLSubClassOfAxiom ax : i.getAxioms(AxiomType.SUBCLASS_OF)) {
+                if (!ax.getSubClass().isAnonymous()) {
+                    OWLClassExpression bearer = OntologyUtils.extractBearerFromEQ(ax.getSuperClass());
+                    if (bearer != null) {
+                        affected_entity.putIfAbsent(ax.getSubClass().asOWLClass(), bearer);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the index for the ontology, built on first use and rebuilt after the ontology or its imports changed.
+     */
+    public static DefinitionIndex get(OWLOntology o) {
+        return cache.get(o);
+    }
+
+    public OWLClassExpression getEQ(OWLClass c) {
+        return eq.get(c);
+    }
+
+    public OWLClassExpression getHasAffectedEntity(OWLClass c) {
+        return affected_entity.get(c);
+    }
+
+    public int size() {
+        return eq.size();
+    }
+}
@@ -0,0 +1,78 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Compares the linear scans of OntologyUtils.getEQ and OntologyUtils.getHasAffectedEntity with the lookups through
+ * the DefinitionIndex, and checks that both return the same definitions. The scans are quadratic in the number of
+ * classes, so they are only run for a sample of the classes in the ontology (default: 1000).
+ */
+public class DefinitionIndexBenchmarkApp {
+
+    private static void log(Object o) {
+        System.out.println(o.toString());
+    }
+
+    public static void main(String[] args) throws OWLOntologyCreationException {
+        File ontology_file = new File(args[0]);
+        int sample_size = args.length > 1 ? Integer.valueOf(args[1]) : 1000;
+
+        OWLOntology o = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(ontology_file));
+        List<OWLClass> classes = new ArrayList<>(o.getClassesInSignature(Imports.INCLUDED));
+        classes.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        List<OWLClass> sample = new ArrayList<>();
+        int step = Math.max(1, classes.size() / Math.max(1, sample_size));
+        for (int i = 0; i < classes.size() && sample.size() < sample_size; i += step) {
+            sample.add(classes.get(i));
+        }
+        log("Classes: " + classes.size() + ", sample: " + sample.size());
+
+        long start = System.nanoTime();
+        Map<OWLClass, OWLClassExpression> eq_scan = new HashMap<>();
+        Map<OWLClass, OWLClassExpression> bearer_scan = new HashMap<>();
+        for (OWLClass c : sample) {
+            eq_scan.put(c, OntologyUtils.getEQByScan(o, c));
+            bearer_scan.put(c, OntologyUtils.getHasAffectedEntityByScan(o, c));
+        }
+        long scan = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        DefinitionIndex index = DefinitionIndex.get(o);
+        long build = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int mismatches = 0;
+        for (OWLClass c : sample) {
+            if (!Objects.equals(eq_scan.get(c), OntologyUtils.getEQ(o, c))) {
+                mismatches++;
+            }
+            if (!Objects.equals(bearer_scan.get(c), OntologyUtils.getHasAffectedEntity(o, c))) {
+                mismatches++;
+            }
+        }
+        long lookup = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int defined = 0;
+        for (OWLClass c : classes) {
+            if (OntologyUtils.getEQ(o, c) != null) {
+                defined++;
+            }
+            OntologyUtils.getHasAffectedEntity(o, c);
+        }
+        long lookup_all = System.nanoTime() - start;
+
+        log("Classes with a logical definition: " + defined + " (" + index.size() + " indexed)");
+        log("Scan, sample: " + scan / 1000000 + " ms (" + (scan / Math.max(1, sample.size())) / 1000 + " us per class)");
+        log("Index build: " + build / 1000000 + " ms");
+        log("Index, sample: " + lookup / 1000000 + " ms (" + (lookup / Math.max(1, sample.size())) / 1000 + " us per class)");
+        log("Index, all classes: " + lookup_all / 1000000 + " ms");
+        log("Estimated scan, all classes: " + (scan / Math.max(1, sample.size())) * classes.size() / 1000000 + " ms");
+        log("Mismatches between scan and index: " + mismatches);
+    }
+}
@@ -0,0 +1,215 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Statistics over the (strict, inferred) descendants of every class in a taxonomy, computed in one bottom-up pass
+ * over the DAG of equivalence nodes instead of one subclass query and descendant walk per class.
+ *
+ * The descendants of a node are the union of the members and descendants of its direct children, kept as a bitset
+ * over class ids. A node is processed once all its children are done, and the bitset of a child is released once
+ * all of its parents have consumed it, so only the frontier of the pass is held in memory. From the descendant set
+ * the pass derives
+ * <ul>
+ *     <li>the number of descendants, and the number of descendants matching each of the given counters;</li>
+ *     <li>rollups: the union of the values (for example namespaces) of all descendants, computed with bitsets over
+ *     the distinct values.</li>
+ * </ul>
+ * As with OWLReasoner.getSubClasses(c, false), the descendants of a class do not include its equivalent classes,
+ * but include the unsatisfiable classes (the bottom node), except for owl:Nothing. owl:Thing and owl:Nothing are
+ * never counted.
+ */
+public class DescendantAggregates {
+
+    private final Map<OWLClass, Integer> node_of = new HashMap<>();
+    private final List<String> counters;
+    private final List<String> rollups;
+    private final List<List<String>> rollup_values = new ArrayList<>();
+    private final int[] count;
+    private final int[][] counter_counts;
+    private final BitSet[][] rollup_bits;
+
+    /**
+     * @param counters named class predicates; for every class, the number of descendants matching each is counted
+     * @param rollups  named value functions; for every class, the values of all its descendants are collected
+     */
+    public DescendantAggregates(TaxonomySnapshot taxonomy, Map<String, Predicate<OWLClass>> counters, Map<String, Function<OWLClass, Collection<String>>> rollups) {
+        this.counters = new ArrayList<>(counters.keySet());
+        this.rollups = new ArrayList<>(rollups.keySet());
+        OWLClass[] classes = taxonomy.getClasses();
+        int[][] members = taxonomy.getMembers();
+        int[][] parents = taxonomy.getParents();
+        int ct_nodes = members.length;
+        for (int n = 0; n < ct_nodes; n++) {
+            for (int c : members[n]) {
+                node_of.put(classes[c], n);
+            }
+        }
+
+        // Per class features: whether it is counted at all, matches each counter, and the ids of its rollup values.
+        BitSet counted = new BitSet(classes.length);
+        BitSet[] counter_masks = new BitSet[this.counters.size()];
+        int[][][] class_values = new int[this.rollups.size()][classes.length][];
+        for (int k = 0; k < counter_masks.length; k++) {
+            counter_masks[k] = new BitSet(classes.length);
+        }
+        for (int k = 0; k < this.rollups.size(); k++) {
+            rollup_values.add(new ArrayList<>());
+        }
+        List<Map<String, Integer>> value_ids = new ArrayList<>();
+        for (int k = 0; k < this.rollups.size(); k++) {
+            value_ids.add(new HashMap<>());
+        }
+        for (int c = 0; c < classes.length; c++) {
+            OWLClass cl = classes[c];
+            if (cl.isOWLThing() || cl.isOWLNothing()) {
+                continue;
+            }
+            counted.set(c);
+            for (int k = 0; k < counter_masks.length; k++) {
+                if (counters.get(this.counters.get(k)).test(cl)) {
+                    counter_masks[k].set(c);
+                }
+            }
+            for (int k = 0; k < this.rollups.size(); k++) {
+                Collection<String> values = rollups.get(this.rollups.get(k)).apply(cl);
+                int[] ids = new int[values.size()];
+                int i = 0;
+                for (String v : values) {
+                    Map<String, Integer> ids_k = value_ids.get(k);
+                    List<String> values_k = rollup_values.get(k);
+                    Integer id = ids_k.get(v);
+                    if (id == null) {
+                        id = values_k.size();
+                        ids_k.put(v, id);
+                        values_k.add(v);
+                    }
+                    ids[i++] = id;
+                }
+                class_values[k][c] = ids;
+            }
+        }
+
+        int[][] children = invert(parents);
+        int[] pending_children = new int[ct_nodes];
+        int[] pending_parents = new int[ct_nodes];
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int n = 0; n < ct_nodes; n++) {
+            pending_children[n] = children[n].length;
+            pending_parents[n] = parents[n].length;
+            if (pending_children[n] == 0) {
+                ready.add(n);
+            }
+        }
+
+        count = new int[ct_nodes];
+        counter_counts = new int[ct_nodes][this.counters.size()];
+        rollup_bits = new BitSet[ct_nodes][this.rollups.size()];
+        BitSet[] descendants = new BitSet[ct_nodes];
+        while (!ready.isEmpty()) {
+            int n = ready.poll();
+            BitSet d = new BitSet();
+            BitSet[] rolled = new BitSet[this.rollups.size()];
+            for (int k = 0; k < rolled.length; k++) {
+                rolled[k] = new BitSet();
+            }
+            for (int child : children[n]) {
+                d.or(descendants[child]);
+                for (int c : members[child]) {
+                    d.set(c);
+                }
+                for (int k = 0; k < rolled.length; k++) {
+                    rolled[k].or(rollup_bits[child][k]);
+                    for (int c : members[child]) {
+                        if (counted.get(c)) {
+                            for (int v : class_values[k][c]) {
+                                rolled[k].set(v);
+                            }
+                        }
+                    }
+                }
+                if (--pending_parents[child] == 0) {
+                    descendants[child] = null;
+                }
+            }
+            d.and(counted);
+            count[n] = d.cardinality();
+            for (int k = 0; k < counter_masks.length; k++) {
+                counter_counts[n][k] = intersectionCardinality(d, counter_masks[k]);
+            }
+            rollup_bits[n] = rolled;
+            descendants[n] = pending_parents[n] == 0 ? null : d;
+            for (int p : parents[n]) {
+                if (--pending_children[p] == 0) {
+                    ready.add(p);
+                }
+            }
+        }
+    }
+
+    private static int[][] invert(int[][] parents) {
+        int[] ct = new int[parents.length];
+        for (int[] p : parents) {
+            for (int n : p) {
+                ct[n]++;
+            }
+        }
+        int[][] children = new int[parents.length][];
+        for (int n = 0; n < parents.length; n++) {
+            children[n] = new int[ct[n]];
+            ct[n] = 0;
+        }
+        for (int n = 0; n < parents.length; n++) {
+            for (int p : parents[n]) {
+                children[p][ct[p]++] = n;
+            }
+        }
+        return children;
+    }
+
+    private static int intersectionCardinality(BitSet a, BitSet b) {
+        int ct = 0;
+        for (int i = a.nextSetBit(0); i >= 0; i = a.nextSetBit(i + 1)) {
+            if (b.get(i)) {
+                ct++;
+            }
+        }
+        return ct;
+    }
+
+    /**
+     * @return the number of descendants of the class, or 0 if the class is not part of the taxonomy.
+     */
+    public int count(OWLClass c) {
+        Integer n = node_of.get(c);
+        return n == null ? 0 : count[n];
+    }
+
+    /**
+     * @return the number of descendants of the class that match the named counter.
+     */
+    public int count(OWLClass c, String counter) {
+        Integer n = node_of.get(c);
+        return n == null ? 0 : counter_counts[n][counters.indexOf(counter)];
+    }
+
+    /**
+     * @return the union of the values of the named rollup over all descendants of the class.
+     */
+    public Set<String> rollup(OWLClass c, String rollup) {
+        Set<String> values = new HashSet<>();
+        Integer n = node_of.get(c);
+        if (n != null) {
+            int k = rollups.indexOf(rollup);
+            BitSet bits = rollup_bits[n][k];
+            for (int v = bits.nextSetBit(0); v >= 0; v = bits.nextSetBit(v + 1)) {
+                values.add(rollup_values.get(k).get(v));
+            }
+        }
+        return values;
+    }
+}
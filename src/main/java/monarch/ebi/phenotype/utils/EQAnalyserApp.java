@@ -12,22 +12,27 @@ import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Hello world!
  */
 public class EQAnalyserApp {
     private final Set<OWLClass> phenotypes = new HashSet<>();
-    private final Set<EQViolation> eq_violations = new HashSet<>();
+    private final List<EQViolation> eq_violations = new ArrayList<>();
     private final File ontology_file;
     private final File ontology_dir_out;
+    private final int threads;
     private static OWLDataFactory df = OWLManager.getOWLDataFactory();
     private RenderManager ren = RenderManager.getInstance();
 
 
-    private EQAnalyserApp(File ontology_file, File ontology_dir_out, File phenotype_list_file) throws IOException, OWLOntologyCreationException {
+    private EQAnalyserApp(File ontology_file, File ontology_dir_out, File phenotype_list_file, int threads) throws IOException, OWLOntologyCreationException {
         this.ontology_file = ontology_file;
         this.ontology_dir_out = ontology_dir_out;
+        this.threads = threads;
         if(phenotype_list_file.exists()) {
             FileUtils.readLines(phenotype_list_file, "utf-8").forEach(e -> phenotypes.add(df.getOWLClass(IRI.create(e))));
         }
@@ -41,22 +46,29 @@ public class EQAnalyserApp {
         OWLReasoner elk = new ElkReasonerFactory().createReasoner(o);
         preparePhenotypes(elk,o);
         log("Phenotypes: "+phenotypes.size());
+        // All violations are evaluated against a read-only snapshot of the class hierarchy, which can be shared by threads.
+        OWLReasoner view = new SnapshotReasoner(o, TaxonomySnapshot.fromReasoner(elk, ""));
         eq_violations.add(new PhysicalQualityInheresInProcessViolation(elk));
-        eq_violations.add(new ProcessPhenotypeSublassMEPhenotype(elk,phenotypes));
-        Map<String,Map<OWLClassExpression,String>> ordered_report = new HashMap<>();
-        for(EQViolation violation:eq_violations) {
-            for(OWLClass p:phenotypes) {
-                OWLClassExpression eq = OntologyUtils.getEQ(o,p);
-                if(eq!=null) {
-                    violation.violatedBy(eq);
-                    Map<String, String> rep = violation.report(eq);
-                    for(String key:rep.keySet()) {
-                        String val = rep.get(key);
-                        if(!ordered_report.containsKey(key)) {
-                            ordered_report.put(key,new HashMap<>());
-                        }
-                        ordered_report.get(key).put(p,val);
-                    }
+        eq_violations.add(new ProcessPhenotypeSublassMEPhenotype(elk,view));
+        List<OWLClass> defined = new ArrayList<>();
+        List<OWLClassExpression> eqs = new ArrayList<>();
+        List<OWLClass> sorted_phenotypes = new ArrayList<>(phenotypes);
+        sorted_phenotypes.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        for(OWLClass p:sorted_phenotypes) {
+            OWLClassExpression eq = OntologyUtils.getEQ(o,p);
+            if(eq!=null) {
+                defined.add(p);
+                eqs.add(eq);
+            }
+        }
+        List<Map<String, String>> reports = evaluate(defined, eqs);
+        // Merged in a fixed order of violations, categories and phenotypes, so the reports do not depend on scheduling.
+        Map<String,Map<OWLClassExpression,String>> ordered_report = new TreeMap<>();
+        for(int v=0;v<eq_violations.size();v++) {
+            for(int i=0;i<defined.size();i++) {
+                Map<String, String> rep = reports.get(i*eq_violations.size()+v);
+                for(String key:rep.keySet()) {
+                    ordered_report.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(defined.get(i),rep.get(key));
                 }
             }
         }
@@ -76,6 +88,29 @@ public class EQAnalyserApp {
 
     }
 
+    /*
+    Evaluates every violation against every phenotype, in parallel over the grid. The result of phenotype i and
+    violation v is at index i * (number of violations) + v. Each task sets its own index of the list, which is filled
+    up front and never resized.
+     */
+    private List<Map<String, String>> evaluate(List<OWLClass> defined, List<OWLClassExpression> eqs) throws IOException {
+        int ct_violations = eq_violations.size();
+        List<Map<String, String>> reports = new ArrayList<>(Collections.nCopies(defined.size() * ct_violations, null));
+        log("Evaluating "+eq_violations.size()+" violations for "+defined.size()+" phenotypes on "+threads+" threads.");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, reports.size()).parallel().forEach(i -> {
+                int p = i / ct_violations;
+                reports.set(i, eq_violations.get(i % ct_violations).evaluate(defined.get(p), eqs.get(p)));
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IOException("Evaluating the EQ violations failed", e);
+        } finally {
+            pool.shutdown();
+        }
+        return reports;
+    }
+
     private void preparePhenotypes(OWLReasoner elk,OWLOntology o) {
         if(phenotypes.isEmpty()) {
             for(OWLClass cl:elk.getSubClasses(Entities.phenotype,false).getFlattened()) {
@@ -98,16 +133,18 @@ public class EQAnalyserApp {
         String ontology_path = args[0];
         String ontology_path_out = args[1];
         String phenotype_list = args[2];
+        int threads = args.length > 3 ? Integer.valueOf(args[3]) : Runtime.getRuntime().availableProcessors();
         */
         String ontology_path = "/Users/matentzn/data/mp.owl";
         String dir_path_out = "/Users/matentzn/ws/upheno-dev/src/curation/qc";
         String phenotype_list = "";
+        int threads = Runtime.getRuntime().availableProcessors();
 
         File ontology_file = new File(ontology_path);
         File ontology_dir_out = new File(dir_path_out);
         File phenotype_list_file = new File(phenotype_list);
 
-        new EQAnalyserApp(ontology_file, ontology_dir_out, phenotype_list_file);
+        new EQAnalyserApp(ontology_file, ontology_dir_out, phenotype_list_file, threads);
     }
 
 }
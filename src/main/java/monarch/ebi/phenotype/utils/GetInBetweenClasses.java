@@ -1,16 +1,12 @@
 package monarch.ebi.phenotype.utils;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStream;
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 
-import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
@@ -21,7 +17,7 @@ import org.yaml.snakeyaml.Yaml;
  */
 public class GetInBetweenClasses {
     private static String OBOPURLSTRING = "http://purl.obolibrary.org/obo/";
-    private final List<String> legal_filler_patterns = new ArrayList<>();
+    private final PrefixTrie<Boolean> legal_filler_patterns = new PrefixTrie<>();
     private final Set<String> legal_patterns_vars_set = new HashSet<>();
     private final File ontology_file;
     private final File oid_pattern_matches_dir;
@@ -31,8 +27,22 @@ public class GetInBetweenClasses {
     private final File legal_pattern_vars;
     private static OWLDataFactory df = OWLManager.getOWLDataFactory();
     private final int SUPER_CLASS_DEPTH;
+    private final int ancestor_cache_size;
+    private final int threads;
+    private AncestorClosureCache ancestors;
+    private OWLReasoner hierarchy_reasoner;
+    private ClassHierarchy hierarchy;
+    private BitSet legal_filler_ids;
 
     public GetInBetweenClasses(File ontology_file, File oid_pattern_matches_dir, File pattern_dir, File oid_upheno_fillers_dir, File legal_filler_iri_patterns, File legal_pattern_vars, int SUPER_CLASS_DEPTH) throws IOException, OWLOntologyCreationException {
+        this(ontology_file, oid_pattern_matches_dir, pattern_dir, oid_upheno_fillers_dir, legal_filler_iri_patterns, legal_pattern_vars, SUPER_CLASS_DEPTH, AncestorClosureCache.DEFAULT_SIZE, 1);
+    }
+
+    /**
+     * @param threads the number of pattern files processed concurrently; with 1, they are processed one after the
+     *                other against the reasoner. The output files are the same in both modes.
+     */
+    public GetInBetweenClasses(File ontology_file, File oid_pattern_matches_dir, File pattern_dir, File oid_upheno_fillers_dir, File legal_filler_iri_patterns, File legal_pattern_vars, int SUPER_CLASS_DEPTH, int ancestor_cache_size, int threads) throws IOException, OWLOntologyCreationException {
         this.ontology_file = ontology_file;
         this.oid_pattern_matches_dir = oid_pattern_matches_dir;
         this.pattern_dir = pattern_dir;
@@ -40,31 +50,86 @@ public class GetInBetweenClasses {
         this.legal_filler_iri_patterns = legal_filler_iri_patterns;
         this.legal_pattern_vars = legal_pattern_vars;
         this.SUPER_CLASS_DEPTH = SUPER_CLASS_DEPTH;
+        this.ancestor_cache_size = ancestor_cache_size;
+        this.threads = threads;
         run();
     }
 
+    /*
+    Only sets up the filler patterns, without running the pipeline. Used by the benchmarks.
+     */
+    GetInBetweenClasses(List<String> legal_filler_patterns, int SUPER_CLASS_DEPTH) {
+        this.ontology_file = null;
+        this.oid_pattern_matches_dir = null;
+        this.pattern_dir = null;
+        this.oid_upheno_fillers_dir = null;
+        this.legal_filler_iri_patterns = null;
+        this.legal_pattern_vars = null;
+        this.SUPER_CLASS_DEPTH = SUPER_CLASS_DEPTH;
+        this.ancestor_cache_size = AncestorClosureCache.DEFAULT_SIZE;
+        this.threads = 1;
+        addLegalFillerPatterns(legal_filler_patterns);
+    }
+
+    private void addLegalFillerPatterns(List<String> patterns) {
+        for (String iripattern : patterns) {
+            legal_filler_patterns.put(iripattern, true);
+        }
+    }
+
     private void run() throws IOException, OWLOntologyCreationException {
-        legal_filler_patterns.addAll(FileUtils.readLines(this.legal_filler_iri_patterns,"utf-8"));
+        addLegalFillerPatterns(FileUtils.readLines(this.legal_filler_iri_patterns,"utf-8"));
         legal_patterns_vars_set.addAll(FileUtils.readLines(this.legal_pattern_vars,"utf-8"));
         OWLOntology o = OWLManager.createOWLOntologyManager().loadOntology(IRI.create(ontology_file));
-        OWLReasoner r = new ElkReasonerFactory().createReasoner(o);
-        for (File tsv_file : oid_pattern_matches_dir.listFiles((dir, name) -> name.toLowerCase().endsWith(".tsv"))) {
-            //if(tsv_file.getName().contains("abnormalAbsenceOfBehavi"))
-                extract_fillers_for_tsv(r, tsv_file);
+        OWLReasoner r = TaxonomySnapshot.createReasoner(o);
+        File[] tsv_files = oid_pattern_matches_dir.listFiles((dir, name) -> name.toLowerCase().endsWith(".tsv"));
+        if(threads > 1) {
+            // Reasoners are not thread safe, so the pattern files share an immutable snapshot of the class hierarchy.
+            OWLReasoner view = r instanceof SnapshotReasoner ? r : new SnapshotReasoner(o, TaxonomySnapshot.fromReasoner(r, ""));
+            log("Processing "+tsv_files.length+" pattern files on "+threads+" threads.");
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> Arrays.stream(tsv_files).parallel().forEach(tsv_file -> {
+                    try {
+                        extract_fillers_for_tsv(view, tsv_file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IOException("Processing the pattern files failed", e);
+            } finally {
+                pool.shutdown();
+            }
+            log(ancestors(view));
+        } else {
+            for (File tsv_file : tsv_files) {
+                //if(tsv_file.getName().contains("abnormalAbsenceOfBehavi"))
+                    extract_fillers_for_tsv(r, tsv_file);
+            }
+            log(ancestors(r));
         }
 
     }
 
     private void extract_fillers_for_tsv(OWLReasoner r, File tsv_file) throws IOException {
         File pattern = new File(pattern_dir, tsv_file.getName().replaceAll(".tsv$", ".yaml"));
-        List<Map<String, String>> tsv = loadTsv(tsv_file);
-        if(!tsv.isEmpty()) {
+        log("Load TSV: "+tsv_file);
+        try (MappedTsvReader tsv = new MappedTsvReader(tsv_file)) {
+            if(tsv.isEmpty()) {
+                return;
+            }
 
             log("Processing TSV: "+tsv_file+" , size: "+tsv.size());
 
             Map<String, Object> obj = loadPattern(pattern);
             Map<String, OWLClass> filler = getFillerClassesFromPattern(obj);
             List<String> filler_columns = new ArrayList<>(filler.keySet());
+            for (String filler_column : filler_columns) {
+                if (tsv.getColumn(filler_column) < 0) {
+                    throw new IOException("Column " + filler_column + " of pattern " + pattern + " is missing from " + tsv_file);
+                }
+            }
 
             //if(tsv.size()>2&&tsv.size()<8&&filler.keySet().size()>1) {
                 //log("TSV:");
@@ -74,93 +139,109 @@ public class GetInBetweenClasses {
                 //log("Filler: "+filler.toString());
 
                 //log("Filler columns: "+filler_columns.toString());
-                Set<Map<String, String>> upheno_fillers = computeAllFillerCombinations(r, tsv, filler, filler_columns);
-                //log("transformed combinations:");
-                //log(upheno_fillers);
-                //System.exit(0);
-                log("Cartesian product size: " + upheno_fillers.size());
-                exportTSVs(upheno_fillers, filler_columns, tsv_file.getName());
+                File tsvf = new File(oid_upheno_fillers_dir, tsv_file.getName());
+                log("Exporting to file: "+tsvf);
+                int ct_rows;
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(FileUtils.openOutputStream(tsvf), StandardCharsets.UTF_8))) {
+                    out.write(String.join("\t", filler_columns));
+                    out.write(System.lineSeparator());
+                    ct_rows = writeAllFillerCombinations(r, tsv, filler, filler_columns, out);
+                }
+                log("Cartesian product size: " + ct_rows);
             //}
         }
     }
 
-    private Set<List<OWLClass>> computeCartesianProduct(List<List<OWLClass>> fillers) {
-        Set<List<OWLClass>> cp = new HashSet<>();
-        if(fillers.size()==1) {
-            //log("Only one feature, no cartesian product necessary.");
-            for(List<OWLClass> column:fillers) {
-                for(OWLClass cl:column) {
-                    cp.add(Collections.singletonList(cl));
-                }
-            }
+    /*
+    Streams the distinct combinations of the fillers of all records to the output, in the order they are first
+    generated. The combinations of a record are enumerated like an odometer, without materialising them, and
+    deduplicated as rows of class ids, so memory is bounded by the number of distinct rows written.
+     */
+    private int writeAllFillerCombinations(OWLReasoner r, MappedTsvReader tsv, Map<String, OWLClass> filler, List<String> filler_columns, Writer out) throws IOException {
+        Map<OWLClass, Integer> class_ids = new HashMap<>();
+        List<String> class_iris = new ArrayList<>();
+        IntRowSet written = new IntRowSet(filler_columns.size());
+        int[] row = new int[filler_columns.size()];
+        int[] odometer = new int[filler_columns.size()];
+        int[] tsv_columns = new int[filler_columns.size()];
+        for (int i = 0; i < filler_columns.size(); i++) {
+            tsv_columns[i] = tsv.getColumn(filler_columns.get(i));
         }
-        else {
-            //log("More than one feature, computing cartesian product.");
-            //log(filler_map);
-            //filler_map.forEach(l->log(l.size()));
-            cp.addAll(Lists.cartesianProduct(fillers).stream().distinct().collect(Collectors.toList()));
+        int ct_header = tsv.getHeader().length;
+        // Resolved once for the whole TSV, so the records do not contend for the lock of this object.
+        ClassHierarchy h;
+        BitSet legal;
+        AncestorClosureCache a;
+        synchronized (this) {
+            h = hierarchy(r);
+            legal = legal_filler_ids;
+            a = ancestors(r);
         }
-        return cp;
-    }
-
-    private Set<Map<String, String>> computeAllFillerCombinations(OWLReasoner r, List<Map<String, String>> tsv, Map<String, OWLClass> filler, List<String> filler_columns) {
-        Set<Map<String, String>> upheno_fillers = new HashSet<>();
         //log("Computing all filler combinations..");
-        for (Map<String, String> rec : tsv) {
+        for (MappedTsvReader.Row rec : tsv) {
             //log("Record: "+rec);
-            // The filler_combinations will contain one list of owlclasses for each feature (anatomical_entity, biological_process, etc)
-            List<List<OWLClass>> filler_combinations = new ArrayList<>();
+            if(rec.size() < ct_header) {
+                log("Warning, row has less columns than header.. ");
+            }
+            // The filler_combinations will contain the class ids of the fillers for each feature (anatomical_entity, biological_process, etc)
+            int[][] filler_combinations = new int[filler_columns.size()][];
             boolean at_least_one_column_no_fillers = false;
-            for (String filler_col : filler_columns) {
-                OWLClass cl = cl(rec.get(filler_col));
+            for (int i = 0; i < filler_columns.size(); i++) {
+                String filler_col = filler_columns.get(i);
+                OWLClass cl = cl(rec.get(tsv_columns[i]));
                 //log(cl);
                 // Computing all inferences between the filler class declared in the pattern and the class in the record. Filtering out those fillers that are not declared legal, species independent fillers in the legal_filler.txt file. If the current column is configured to be expanded to superclasses, it is done, else only the entity itself is taken over.
-                List<OWLClass> classes_in_between = between(cl, filler.get(filler_col), r, legal_patterns_vars_set.contains(filler_col));
+                List<OWLClass> classes_in_between = between(cl, filler.get(filler_col), h, legal, a, legal_patterns_vars_set.contains(filler_col));
                 if(classes_in_between.isEmpty()) {
                     //log("No fillers found for class: "+cl);
                     at_least_one_column_no_fillers = true;
                     break;
-                } else {
-                    filler_combinations.add(classes_in_between);
                 }
-
+                filler_combinations[i] = new int[classes_in_between.size()];
+                for (int j = 0; j < classes_in_between.size(); j++) {
+                    OWLClass c = classes_in_between.get(j);
+                    Integer id = class_ids.get(c);
+                    if (id == null) {
+                        id = class_iris.size();
+                        class_ids.put(c, id);
+                        class_iris.add(c.getIRI().toString());
+                    }
+                    filler_combinations[i][j] = id;
+                }
             }
-            //log("Filler combinations:");
-            //filler_combinations.forEach(this::log);
             if(at_least_one_column_no_fillers) {
                 log("At least one column has no fillers for rec: "+rec);
-            } else {
-                Set<List<OWLClass>> cp = computeCartesianProduct(filler_combinations);
-                //log("CartesianXYZ:");
-                //System.exit(0);
-                for(List<OWLClass> row:cp) {
-                    //log(cp);
-                    Map<String,String> nrec = new HashMap<>();
-                    for (int i = 0; i < filler_columns.size(); i++) {
-                        try {
-                            nrec.put(filler_columns.get(i), row.get(i).getIRI().toString());
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                            log(row);
-                            log(filler_columns);
-                            System.exit(0);
+                continue;
+            }
+            Arrays.fill(odometer, 0);
+            while (true) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = filler_combinations[i][odometer[i]];
+                }
+                if (written.add(row)) {
+                    for (int i = 0; i < row.length; i++) {
+                        if (i > 0) {
+                            out.write('\t');
                         }
+                        out.write(class_iris.get(row[i]));
                     }
-                    //log(nrec);
-                    upheno_fillers.add(nrec);
+                    out.write(System.lineSeparator());
+                }
+                int i = row.length - 1;
+                while (i >= 0 && ++odometer[i] == filler_combinations[i].length) {
+                    odometer[i] = 0;
+                    i--;
+                }
+                if (i < 0) {
+                    break;
                 }
             }
         }
-        return upheno_fillers;
+        return written.size();
     }
 
     private boolean legalFiller(OWLClass owlClass) {
-        for(String iripattern:this.legal_filler_patterns) {
-            if(owlClass.getIRI().toString().startsWith(iripattern)) {
-                return true;
-            }
-        }
-        return false;
+        return legal_filler_patterns.matchesPrefix(owlClass.getIRI().toString());
     }
 
     private Map<String,OWLClass> getFillerClassesFromPattern(Map<String, Object> obj) {
@@ -185,53 +266,108 @@ public class GetInBetweenClasses {
         System.out.println(o.toString());
     }
 
-    private List<OWLClass> between(OWLClass e, OWLClass filler, OWLReasoner r, boolean legal_pattern_var) {
+    /*
+    The ancestor cache is shared by all TSVs processed against the same reasoner.
+     */
+    private synchronized AncestorClosureCache ancestors(OWLReasoner r) {
+        if (ancestors == null || ancestors.getReasoner() != r) {
+            ancestors = new AncestorClosureCache(r, ancestor_cache_size);
+        }
+        return ancestors;
+    }
+
+    /*
+    The direct parent adjacency of the classes is computed once per reasoner, and shared by all TSVs; a snapshot
+    reasoner's own snapshot is used as is. So is the legality of every class as a filler, indexed by class id.
+     */
+    private synchronized ClassHierarchy hierarchy(OWLReasoner r) {
+        if (hierarchy == null || hierarchy_reasoner != r) {
+            hierarchy = new ClassHierarchy(TaxonomySnapshot.of(r));
+            hierarchy_reasoner = r;
+            legal_filler_ids = new BitSet(hierarchy.size());
+            for (int id = 0; id < hierarchy.size(); id++) {
+                if (legalFiller(hierarchy.getOWLClass(id))) {
+                    legal_filler_ids.set(id);
+                }
+            }
+        }
+        return hierarchy;
+    }
+
+    List<OWLClass> between(OWLClass e, OWLClass filler, OWLReasoner r, boolean legal_pattern_var) {
+        ClassHierarchy h;
+        BitSet legal;
+        AncestorClosureCache a;
+        synchronized (this) {
+            h = hierarchy(r);
+            legal = legal_filler_ids;
+            a = ancestors(r);
+        }
+        return between(e, filler, h, legal, a, legal_pattern_var);
+    }
+
+    /*
+    The hierarchy, the legal filler ids and the ancestor cache are those of the same reasoner.
+     */
+    private List<OWLClass> between(OWLClass e, OWLClass filler, ClassHierarchy h, BitSet legal, AncestorClosureCache a, boolean legal_pattern_var) {
         //log(e);
         //log(filler);
         Set<OWLClass> between = new HashSet<>();
 
-        if(r.getUnsatisfiableClasses().contains(e)) {
+        if(h.isUnsatisfiable(e)) {
             log(e+" is unsatisfiable, ignoring");
             return new ArrayList<>(between);
         }
 
-        Set<OWLClass> superClasses = new HashSet<>();
-        if(legal_pattern_var) {
-            superClasses.addAll(getSuperclasses(e,r,SUPER_CLASS_DEPTH));
-            superClasses.add(e);
-        } else {
-            superClasses.add(e);
+        int id = h.id(e);
+        if(id < 0) {
+            // Not in the hierarchy, so there are no ids to look up; happens at most once per unknown class in a record.
+            return betweenUnknown(e, filler, h, a, legal_pattern_var);
         }
-        if(superClasses.size()>1000) {
+        int[] superClasses = legal_pattern_var ? h.getSuperClasses(id, SUPER_CLASS_DEPTH) : new int[0];
+        if(superClasses.length + 1 > 1000) {
             log("Number of superclasses >1000");
             log(e);
-            log(superClasses.size());
+            log(superClasses.length + 1);
             //log(superClasses);
 
         }
-        if(!r.getSuperClasses(e, false).getFlattened().contains(filler)) {
+        if(!a.getSuperClasses(e).contains(filler)) {
             log(e +" is not a legal instance of the filler! This should not happen.");
             return new ArrayList<>(between);
         }
-        for(OWLClass s:superClasses) {
-            if(legalFiller(s)) {
-                between.add(s);
+        if(legal.get(id)) {
+            between.add(e);
+        }
+        for(int s:superClasses) {
+            if(legal.get(s)) {
+                between.add(h.getOWLClass(s));
             }
         }
-        between.removeAll(r.getSuperClasses(filler, false).getFlattened());
+        between.removeAll(a.getSuperClasses(filler));
         between.add(filler);
         return new ArrayList<>(between);
     }
 
-    private Collection<? extends OWLClass> getSuperclasses(OWLClass e, OWLReasoner r, int i) {
-        Set<OWLClass> superc = new HashSet<>();
-        if(i>0) {
-            for(OWLClass s:r.getSuperClasses(e, true).getFlattened()) {
-                superc.add(s);
-                getSuperclasses(s, r, (i-1));
+    private List<OWLClass> betweenUnknown(OWLClass e, OWLClass filler, ClassHierarchy h, AncestorClosureCache a, boolean legal_pattern_var) {
+        Set<OWLClass> between = new HashSet<>();
+        Set<OWLClass> superClasses = new HashSet<>();
+        if(legal_pattern_var) {
+            superClasses.addAll(h.getSuperClasses(e,SUPER_CLASS_DEPTH));
+        }
+        superClasses.add(e);
+        if(!a.getSuperClasses(e).contains(filler)) {
+            log(e +" is not a legal instance of the filler! This should not happen.");
+            return new ArrayList<>(between);
+        }
+        for(OWLClass s:superClasses) {
+            if(legalFiller(s)) {
+                between.add(s);
             }
         }
-        return superc;
+        between.removeAll(a.getSuperClasses(filler));
+        between.add(filler);
+        return new ArrayList<>(between);
     }
 
     public OWLClass cl(String iri) {
@@ -247,6 +383,8 @@ public class GetInBetweenClasses {
         String legal_filler_iri_patterns_path = args[4];
         String legal_pattern_vars_path = args[5];
         int SUPER_CLASS_DEPTH = Integer.valueOf(args[6]);
+        int ancestor_cache_size = args.length > 7 ? Integer.valueOf(args[7]) : AncestorClosureCache.DEFAULT_SIZE;
+        int threads = args.length > 8 ? Integer.valueOf(args[8]) : 1;
    /*
         String ontology_path = "/Users/matentzn/ws/upheno-dev/src/curation/ontologies-for-matching/mp.owl";
         String oid_pattern_matches_dir_path = "/Users/matentzn/ws/upheno-dev/src/curation/pattern-matches/mp";
@@ -263,64 +401,14 @@ public class GetInBetweenClasses {
         File legal_filler_iri_patterns = new File(legal_filler_iri_patterns_path);
         File legal_pattern_vars = new File(legal_pattern_vars_path);
 
-        new GetInBetweenClasses(ontology_file, oid_pattern_matches_dir, pattern_dir, oid_upheno_fillers_dir, legal_filler_iri_patterns, legal_pattern_vars,SUPER_CLASS_DEPTH);
+        new GetInBetweenClasses(ontology_file, oid_pattern_matches_dir, pattern_dir, oid_upheno_fillers_dir, legal_filler_iri_patterns, legal_pattern_vars,SUPER_CLASS_DEPTH,ancestor_cache_size,threads);
     }
 
-    private Map<String, Object> loadPattern(File pattern) throws FileNotFoundException {
+    private Map<String, Object> loadPattern(File pattern) throws IOException {
         Yaml yaml = new Yaml();
-        InputStream inputStream = new FileInputStream(pattern);
-        Map<String, Object> obj = yaml.load(inputStream);
-        return obj;
-    }
-
-    private List<Map<String, String>> loadTsv(File tsv_file) throws IOException {
-        List<Map<String, String>> tsv = new ArrayList<>();
-        log("Load TSV: "+tsv_file);
-        List<String> lines = FileUtils.readLines(tsv_file, "utf-8");
-        boolean first = true;
-        String[] header = null;
-        for (String l : lines) {
-            Map<String, String> rec = new HashMap<>();
-            String[] row = l.split("\\t");
-            if (first) {
-                header = row;
-                first = false;
-            } else {
-                for (int i = 0; i < header.length; i++) {
-                    String val = "";
-                    if(row.length>i) {
-                        val = row[i];
-                    } else {
-                        log("Warning, row has less columns than header.. ");
-                    }
-                    rec.put(header[i], val);
-                }
-                tsv.add(rec);
-            }
-
-        }
-        return tsv;
-    }
-
-
-    private void exportTSVs(Collection<Map<String,String>> fillers, List<String> columns, String tsvname) {
-        List<String> outlines = new ArrayList<>();
-        File tsvf = new File(oid_upheno_fillers_dir,tsvname);
-        outlines.add(String.join("\t", columns));
-        for (Map<String,String> rec : fillers) {
-            String s = "";
-            for(String col:columns) {
-                s+= rec.get(col)+"\t";
-            }
-            outlines.add(s.trim());
-        }
-
-        try {
-            log("Exporting to file: "+tsvf);
-            FileUtils.writeLines(tsvf, outlines);
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+        try (InputStream inputStream = new FileInputStream(pattern)) {
+            Map<String, Object> obj = yaml.load(inputStream);
+            return obj;
         }
     }
 
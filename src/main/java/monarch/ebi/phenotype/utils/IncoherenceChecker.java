@@ -0,0 +1,99 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.*;
+
+/**
+ * Determines which of a collection of candidate axioms would, each added on its own to the root ontology of a
+ * reasoner, make the ontology inconsistent or a satisfiable class unsatisfiable.
+ *
+ * Rather than classifying once per candidate, candidates are tested in batches: a batch is added, the ontology is
+ * classified once, and only if the batch causes incoherence it is split in half and both halves are tested again,
+ * down to single axioms. Since adding axioms can never make an unsatisfiable class satisfiable again (the reasoners
+ * used here are monotonic), an axiom that causes incoherence on its own also does so within any batch, and the
+ * result is the same as testing every candidate alone. The ontology is left as it was found.
+ */
+public class IncoherenceChecker {
+
+    private final OWLReasoner r;
+    private final OWLOntology o;
+    private final OWLOntologyManager man;
+    private final int batch_size;
+    private int classifications = 0;
+
+    public IncoherenceChecker(OWLReasoner r, int batch_size) {
+        if (batch_size < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, but was " + batch_size);
+        }
+        this.r = r;
+        this.o = r.getRootOntology();
+        this.man = o.getOWLOntologyManager();
+        this.batch_size = batch_size;
+    }
+
+    /**
+     * @return the candidates that, added on their own, would cause incoherence. If the ontology is inconsistent to begin
+     * with, none of them does.
+     */
+    public Set<OWLAxiom> getIncoherentAxioms(Collection<? extends OWLAxiom> candidates) {
+        Set<OWLAxiom> incoherent = new HashSet<>();
+        r.flush();
+        if (!r.isConsistent()) {
+            return incoherent;
+        }
+        Set<OWLClass> unsatisfiable = r.getUnsatisfiableClasses().getEntities();
+        // Axioms already in the ontology are part of the baseline, and removing them again would change the ontology.
+        List<OWLAxiom> new_axioms = new ArrayList<>();
+        for (OWLAxiom ax : new LinkedHashSet<>(candidates)) {
+            if (!o.containsAxiom(ax)) {
+                new_axioms.add(ax);
+            }
+        }
+        try {
+            for (int i = 0; i < new_axioms.size(); i += batch_size) {
+                bisect(new_axioms.subList(i, Math.min(i + batch_size, new_axioms.size())), unsatisfiable, incoherent);
+            }
+        } finally {
+            r.flush();
+        }
+        return incoherent;
+    }
+
+    private void bisect(List<OWLAxiom> batch, Set<OWLClass> unsatisfiable, Set<OWLAxiom> incoherent) {
+        if (!causesIncoherence(batch, unsatisfiable)) {
+            return;
+        }
+        if (batch.size() == 1) {
+            incoherent.add(batch.get(0));
+            return;
+        }
+        int mid = batch.size() / 2;
+        bisect(batch.subList(0, mid), unsatisfiable, incoherent);
+        bisect(batch.subList(mid, batch.size()), unsatisfiable, incoherent);
+    }
+
+    /*
+    The removal of the batch is only flushed with the next batch, so each test costs one (incremental)
+    classification rather than two.
+     */
+    private boolean causesIncoherence(List<OWLAxiom> batch, Set<OWLClass> unsatisfiable) {
+        Set<OWLAxiom> axioms = new HashSet<>(batch);
+        man.addAxioms(o, axioms);
+        try {
+            r.flush();
+            classifications++;
+            return !r.isConsistent() || !unsatisfiable.containsAll(r.getUnsatisfiableClasses().getEntities());
+        } finally {
+            man.removeAxioms(o, axioms);
+        }
+    }
+
+    /**
+     * @return the number of classifications run so far.
+     */
+    public int getClassifications() {
+        return classifications;
+    }
+}
@@ -0,0 +1,111 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.Map;
+
+/**
+ * Information content (IC) of the classes of an {@link AncestorIndex}, computed once up front, and the IC weighted
+ * similarity measures derived from it. The IC of a class c is -log(p(c)), where p(c) is either the fraction of all
+ * classes that are subclasses of c (descendant counts), or the fraction of all annotations made to c or one of its
+ * subclasses (annotation frequency).
+ *
+ * All measures are computed from a single walk over the intersection of the two ancestor bitsets:
+ * Resnik is the IC of the most informative common ancestor, Lin normalises Resnik by the IC of the two classes,
+ * and SimGIC is the IC weighted Jaccard similarity of the two ancestor sets.
+ */
+public class InformationContent {
+
+    private final AncestorIndex index;
+    private final double[] ic;
+    private final double[] ic_sum;
+
+    private InformationContent(AncestorIndex index, double[] ic) {
+        this.index = index;
+        this.ic = ic;
+        this.ic_sum = new double[index.size()];
+        for (int id = 0; id < index.size(); id++) {
+            double sum = 0.0;
+            for (int a : index.ancestors(id)) {
+                sum += ic[a];
+            }
+            ic_sum[id] = sum;
+        }
+    }
+
+    /**
+     * IC based on the number of classes (including the class itself) that have the class in their ancestor set.
+     */
+    public static InformationContent fromDescendantCounts(AncestorIndex index) {
+        int[] descendants = new int[index.size()];
+        int ct_classes = 0;
+        for (int id = 0; id < index.size(); id++) {
+            if (index.hasAncestors(id)) {
+                ct_classes++;
+                for (int a : index.ancestors(id)) {
+                    descendants[a]++;
+                }
+            }
+        }
+        double[] ic = new double[index.size()];
+        for (int id = 0; id < ic.length; id++) {
+            // Classes that only occur as ancestors are counted as if they had one descendant, themselves.
+            ic[id] = -Math.log((double) Math.max(1, descendants[id]) / (double) Math.max(1, ct_classes));
+        }
+        return new InformationContent(index, ic);
+    }
+
+    /**
+     * IC based on annotation frequency: an annotation to a class counts for all of its ancestors. Classes without
+     * any annotation get a pseudo count of 1, so their IC is finite.
+     *
+     * @param annotations the number of annotations made directly to each class
+     */
+    public static InformationContent fromAnnotationFrequency(AncestorIndex index, Map<OWLClass, Integer> annotations) {
+        long[] counts = new long[index.size()];
+        long total = 0;
+        for (Map.Entry<OWLClass, Integer> e : annotations.entrySet()) {
+            int id = index.id(e.getKey());
+            if (id < 0 || !index.hasAncestors(id)) {
+                continue;
+            }
+            total += e.getValue();
+            for (int a : index.ancestors(id)) {
+                counts[a] += e.getValue();
+            }
+        }
+        double[] ic = new double[index.size()];
+        for (int id = 0; id < ic.length; id++) {
+            ic[id] = -Math.log((double) (counts[id] + 1) / (double) (total + 1));
+        }
+        return new InformationContent(index, ic);
+    }
+
+    public double getIC(int id) {
+        return ic[id];
+    }
+
+    /**
+     * Writes Jaccard, Resnik, Lin and SimGIC for the two classes into out[0..3]. All values are 0.0 if either of
+     * the classes has no ancestor set.
+     */
+    public void similarity(int a, int b, double[] out) {
+        if (!(index.hasAncestors(a) && index.hasAncestors(b))) {
+            out[0] = 0.0;
+            out[1] = 0.0;
+            out[2] = 0.0;
+            out[3] = 0.0;
+            return;
+        }
+        int intersection = index.intersectionWeights(a, b, ic, out, 1);
+        double shared_ic = out[1];
+        double mica = out[2];
+        int union = index.cardinality(a) + index.cardinality(b) - intersection;
+        double union_ic = ic_sum[a] + ic_sum[b] - shared_ic;
+        double ic_ab = ic[a] + ic[b];
+        out[0] = (double) intersection / (double) union;
+        out[1] = mica;
+        out[2] = ic_ab > 0.0 ? 2.0 * mica / ic_ab : 0.0;
+        out[3] = union_ic > 0.0 ? shared_ic / union_ic : 0.0;
+    }
+}
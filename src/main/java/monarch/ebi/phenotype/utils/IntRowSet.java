@@ -0,0 +1,122 @@
+package monarch.ebi.phenotype.utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of fixed width rows of ints, for example tuples of interned ids. Rows are copied into one flat array, and
+ * found through an open addressing hash table (linear probing) of row offsets, so the set takes about
+ * (width + 2) * 4 bytes per row, with no object per row.
+ */
+public class IntRowSet {
+
+    private static final int EMPTY = -1;
+
+    private final int width;
+    private int[] rows;
+    private int[] table;
+    private int size = 0;
+
+    public IntRowSet(int width) {
+        this(width, 16);
+    }
+
+    public IntRowSet(int width, int expected_size) {
+        if (width < 0) {
+            throw new IllegalArgumentException("Row width must not be negative, but was " + width);
+        }
+        this.width = width;
+        this.rows = new int[Math.max(1, expected_size) * width];
+        this.table = new int[tableSize(expected_size)];
+        Arrays.fill(table, EMPTY);
+    }
+
+    private static int tableSize(int expected_size) {
+        int n = 16;
+        while (n < expected_size * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * Adds a copy of the row, which must have the width of the set.
+     *
+     * @return true if the row was not in the set yet.
+     */
+    public boolean add(int[] row) {
+        if (row.length != width) {
+            throw new IllegalArgumentException("Expected a row of width " + width + ", but got " + row.length);
+        }
+        int mask = table.length - 1;
+        int slot = hash(row) & mask;
+        while (table[slot] != EMPTY) {
+            if (equalsRow(table[slot], row)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((long) (size + 1) * width > rows.length) {
+            rows = Arrays.copyOf(rows, Math.max(rows.length * 2, (size + 1) * width));
+        }
+        System.arraycopy(row, 0, rows, size * width, width);
+        table[slot] = size++;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(int[] row) {
+        if (row.length != width) {
+            return false;
+        }
+        int mask = table.length - 1;
+        int slot = hash(row) & mask;
+        while (table[slot] != EMPTY) {
+            if (equalsRow(table[slot], row)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean equalsRow(int index, int[] row) {
+        int offset = index * width;
+        for (int i = 0; i < width; i++) {
+            if (rows[offset + i] != row[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(int[] row) {
+        int h = Arrays.hashCode(row);
+        // Spread the bits, as consecutive ids would otherwise fill consecutive slots.
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        Arrays.fill(table, EMPTY);
+        int mask = table.length - 1;
+        int[] row = new int[width];
+        for (int index : old) {
+            if (index != EMPTY) {
+                System.arraycopy(rows, index * width, row, 0, width);
+                int slot = hash(row) & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = index;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package monarch.ebi.phenotype.utils;
+
+import com.google.common.collect.ImmutableMap;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable labels and descriptions of the entities in the signature of an ontology (imports included), as used by
+ * the RenderManager. The index is built once per ontology, in parallel over the signature, and can be read from any
+ * number of threads without locking. Indexes of several ontologies are combined with {@link #merge(LabelIndex)}.
+ */
+public class LabelIndex {
+
+    public static final LabelIndex EMPTY = new LabelIndex(ImmutableMap.of(), ImmutableMap.of());
+
+    private static final OntologyIndexCache<LabelIndex> cache = new OntologyIndexCache<>(LabelIndex::build);
+
+    private final ImmutableMap<OWLEntity, String> labels;
+    private final ImmutableMap<OWLEntity, String> descriptions;
+
+    private LabelIndex(ImmutableMap<OWLEntity, String> labels, ImmutableMap<OWLEntity, String> descriptions) {
+        this.labels = labels;
+        this.descriptions = descriptions;
+    }
+
+    /**
+     * @return the index of the ontology, built on first use and rebuilt after the ontology or its imports changed.
+     */
+    public static LabelIndex get(OWLOntology o) {
+        return cache.get(o);
+    }
+
+    private static LabelIndex build(OWLOntology o) {
+        Set<OWLEntity> signature = o.getSignature(Imports.INCLUDED);
+        Map<OWLEntity, String> labels = index(signature, s -> OntologyUtils.getLabelsRDFSIfExistsElseOther(s, o));
+        Map<OWLEntity, String> descriptions = index(signature, s -> OntologyUtils.getRDFSDescription(s, o));
+        return new LabelIndex(ImmutableMap.copyOf(labels), ImmutableMap.copyOf(descriptions));
+    }
+
+    /*
+    Like the RenderManager did before, if an entity has more than one value, the last one in iteration order wins.
+     */
+    private static Map<OWLEntity, String> index(Set<OWLEntity> signature, Function<OWLEntity, Set<String>> values) {
+        return signature.parallelStream()
+                .map(s -> new AbstractMap.SimpleImmutableEntry<>(s, last(values.apply(s))))
+                .filter(e -> e.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private static String last(Set<String> values) {
+        String last = null;
+        for (String v : values) {
+            last = v;
+        }
+        return last;
+    }
+
+    /**
+     * @return a new index with the entries of both indexes; where both have a value for an entity, the value of the
+     * other index wins.
+     */
+    public LabelIndex merge(LabelIndex other) {
+        if (this == EMPTY) {
+            return other;
+        }
+        Map<OWLEntity, String> merged_labels = new HashMap<>(labels);
+        merged_labels.putAll(other.labels);
+        Map<OWLEntity, String> merged_descriptions = new HashMap<>(descriptions);
+        merged_descriptions.putAll(other.descriptions);
+        return new LabelIndex(ImmutableMap.copyOf(merged_labels), ImmutableMap.copyOf(merged_descriptions));
+    }
+
+    /**
+     * @return a new index with the same descriptions, but without any labels.
+     */
+    public LabelIndex withoutLabels() {
+        return new LabelIndex(ImmutableMap.of(), descriptions);
+    }
+
+    /**
+     * @return the label of the entity, or null if it has none.
+     */
+    public String getLabel(OWLEntity e) {
+        return labels.get(e);
+    }
+
+    /**
+     * @return the description of the entity, or null if it has none.
+     */
+    public String getDescription(OWLEntity e) {
+        return descriptions.get(e);
+    }
+
+    public int size() {
+        return labels.size();
+    }
+}
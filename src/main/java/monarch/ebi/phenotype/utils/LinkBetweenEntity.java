@@ -6,7 +6,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
-public class LinkBetweenEntity {
+public class LinkBetweenEntity implements Comparable<LinkBetweenEntity> {
     final IRI e1;
     final IRI e2;
     final IRI relation;
@@ -32,6 +32,21 @@ public class LinkBetweenEntity {
         return Objects.hash(e1, e2, relation);
     }
 
+    /**
+     * Orders links by the IRIs of their first entity, second entity and relation.
+     */
+    @Override
+    public int compareTo(LinkBetweenEntity o) {
+        int c = e1.toString().compareTo(o.e1.toString());
+        if (c == 0) {
+            c = e2.toString().compareTo(o.e2.toString());
+        }
+        if (c == 0) {
+            c = relation.toString().compareTo(o.relation.toString());
+        }
+        return c;
+    }
+
     @Override
     public String toString() {
         return "("+e1+")-["+relation+"]->("+e2+")";
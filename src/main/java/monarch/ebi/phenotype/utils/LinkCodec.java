@@ -0,0 +1,150 @@
+package monarch.ebi.phenotype.utils;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Packs links into single longs: the interned ids of the first entity (25 bits), the second entity (25 bits) and the
+ * relation (12 bits), from the most to the least significant bits. The sign bit is never set, so packed links are
+ * never negative and sort by first entity, second entity and relation id; all links between the same pair of
+ * entities are adjacent.
+ *
+ * Ids are assigned in the order the IRIs are first encoded; a codec supports up to 2^25 entities and 2^12 relations.
+ *
+ * A codec is not thread-safe while links are encoded. Once all links are loaded, {@link #freeze()} copies the ids into
+ * immutable lists and maps; the frozen codec can then be looked up and decoded from any number of threads without
+ * locking.
+ */
+public class LinkCodec {
+
+    static final int ENTITY_BITS = 25;
+    static final int RELATION_BITS = 12;
+    private static final long ENTITY_MASK = (1L << ENTITY_BITS) - 1;
+    private static final long RELATION_MASK = (1L << RELATION_BITS) - 1;
+
+    private Map<IRI, Integer> entity_ids = new HashMap<>();
+    private List<IRI> entities = new ArrayList<>();
+    private Map<IRI, Integer> relation_ids = new HashMap<>();
+    private List<IRI> relations = new ArrayList<>();
+    private int[] entity_ranks;
+    private int[] entities_by_rank;
+    private int[] relation_ranks;
+    private int[] relations_by_rank;
+    private boolean frozen = false;
+
+    /**
+     * @return the packed link, interning its IRIs if they are new to the codec.
+     * @throws IllegalStateException if the codec is frozen.
+     */
+    public long encode(LinkBetweenEntity l) {
+        if (frozen) {
+            throw new IllegalStateException("Cannot encode links with a frozen codec");
+        }
+        long e1 = intern(l.e1, entity_ids, entities, ENTITY_BITS);
+        long e2 = intern(l.e2, entity_ids, entities, ENTITY_BITS);
+        long p = intern(l.relation, relation_ids, relations, RELATION_BITS);
+        return pack(e1, e2, p);
+    }
+
+    /**
+     * @return the packed link, or -1 if any of its IRIs is unknown to the codec (so no set of this codec contains it).
+     */
+    public long lookup(LinkBetweenEntity l) {
+        Integer e1 = entity_ids.get(l.e1);
+        Integer e2 = entity_ids.get(l.e2);
+        Integer p = relation_ids.get(l.relation);
+        if (e1 == null || e2 == null || p == null) {
+            return -1;
+        }
+        return pack(e1, e2, p);
+    }
+
+    /**
+     * Ends the loading of links: no further links can be encoded, and the codec becomes safe to share between
+     * threads that are started afterwards.
+     */
+    public void freeze() {
+        if (!frozen) {
+            entity_ids = ImmutableMap.copyOf(entity_ids);
+            entities = ImmutableList.copyOf(entities);
+            relation_ids = ImmutableMap.copyOf(relation_ids);
+            relations = ImmutableList.copyOf(relations);
+            entities_by_rank = idsByIri(entities);
+            entity_ranks = invert(entities_by_rank);
+            relations_by_rank = idsByIri(relations);
+            relation_ranks = invert(relations_by_rank);
+            frozen = true;
+        }
+    }
+
+    /**
+     * Sorts packed links in place by the IRIs of their first entity, second entity and relation, the order of
+     * {@link LinkBetweenEntity#compareTo}, without decoding them.
+     *
+     * @throws IllegalStateException if the codec is not frozen.
+     */
+    public void sortByIri(long[] links) {
+        if (!frozen) {
+            throw new IllegalStateException("Links can only be sorted by IRI with a frozen codec");
+        }
+        for (int i = 0; i < links.length; i++) {
+            links[i] = remap(links[i], entity_ranks, relation_ranks);
+        }
+        Arrays.sort(links);
+        for (int i = 0; i < links.length; i++) {
+            links[i] = remap(links[i], entities_by_rank, relations_by_rank);
+        }
+    }
+
+    private static long remap(long link, int[] entity_map, int[] relation_map) {
+        return pack(entity_map[(int) (link >>> (ENTITY_BITS + RELATION_BITS) & ENTITY_MASK)],
+                entity_map[(int) (link >>> RELATION_BITS & ENTITY_MASK)],
+                relation_map[(int) (link & RELATION_MASK)]);
+    }
+
+    /*
+    Returns the ids of the IRIs in the order of their string forms.
+     */
+    private static int[] idsByIri(List<IRI> iris) {
+        return IntStream.range(0, iris.size()).boxed()
+                .sorted(Comparator.comparing(id -> iris.get(id).toString()))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] invert(int[] permutation) {
+        int[] inverse = new int[permutation.length];
+        for (int i = 0; i < permutation.length; i++) {
+            inverse[permutation[i]] = i;
+        }
+        return inverse;
+    }
+
+    /* Visible for the tests at the id limits, which would otherwise need 2^25 distinct IRIs. */
+    static long pack(long e1, long e2, long p) {
+        return e1 << (ENTITY_BITS + RELATION_BITS) | e2 << RELATION_BITS | p;
+    }
+
+    public LinkBetweenEntity decode(long link) {
+        IRI e1 = entities.get((int) (link >>> (ENTITY_BITS + RELATION_BITS) & ENTITY_MASK));
+        IRI e2 = entities.get((int) (link >>> RELATION_BITS & ENTITY_MASK));
+        IRI p = relations.get((int) (link & RELATION_MASK));
+        return new LinkBetweenEntity(e1, e2, p);
+    }
+
+    private static int intern(IRI iri, Map<IRI, Integer> ids, List<IRI> iris, int bits) {
+        Integer id = ids.get(iri);
+        if (id == null) {
+            id = iris.size();
+            if (id >= 1 << bits) {
+                throw new IllegalStateException("More than " + (1 << bits) + " distinct IRIs of this kind, cannot intern " + iri);
+            }
+            ids.put(iri, id);
+            iris.add(iri);
+        }
+        return id;
+    }
+}
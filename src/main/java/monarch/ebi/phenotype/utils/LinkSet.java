@@ -0,0 +1,238 @@
+package monarch.ebi.phenotype.utils;
+
+import java.util.*;
+
+/**
+ * An immutable set of links, stored as a sorted array of links packed by a {@link LinkCodec}: 8 bytes per link,
+ * instead of a LinkBetweenEntity object and a hash table entry. Membership is a binary search, and union,
+ * intersection and difference are linear merges of the sorted arrays. Sets can only be combined with sets of the
+ * same codec.
+ */
+public class LinkSet implements Iterable<LinkBetweenEntity> {
+
+    private final LinkCodec codec;
+    private final long[] links;
+
+    private LinkSet(LinkCodec codec, long[] links) {
+        this.codec = codec;
+        this.links = links;
+    }
+
+    /**
+     * Collects links into a LinkSet. Links may be added in any order and more than once.
+     */
+    public static class Builder {
+        private final LinkCodec codec;
+        private long[] links = new long[16];
+        private int size = 0;
+
+        public Builder(LinkCodec codec) {
+            this.codec = codec;
+        }
+
+        public Builder add(LinkBetweenEntity l) {
+            if (size == links.length) {
+                links = Arrays.copyOf(links, size * 2);
+            }
+            links[size++] = codec.encode(l);
+            return this;
+        }
+
+        public LinkSet build() {
+            long[] sorted = Arrays.copyOf(links, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return new LinkSet(codec, Arrays.copyOf(sorted, distinct));
+        }
+    }
+
+    public int size() {
+        return links.length;
+    }
+
+    public boolean contains(LinkBetweenEntity l) {
+        return contains(codec.lookup(l));
+    }
+
+    /**
+     * @param link a link packed by the codec of this set.
+     */
+    public boolean contains(long link) {
+        return link >= 0 && Arrays.binarySearch(links, link) >= 0;
+    }
+
+    /**
+     * @param link a link packed by the codec of this set.
+     * @return the packed link with the lowest relation id between the same entities as link, irrespective of its
+     * relation, or -1 if the set links no such pair. As links sort by their entities first, this is a binary search
+     * for the start of the range of links of the pair.
+     */
+    public long getLinkBetween(long link) {
+        long pair = link >>> LinkCodec.RELATION_BITS;
+        int i = Arrays.binarySearch(links, pair << LinkCodec.RELATION_BITS);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < links.length && links[i] >>> LinkCodec.RELATION_BITS == pair ? links[i] : -1;
+    }
+
+    /**
+     * @return the number of distinct pairs of entities that are linked.
+     */
+    public int countPairs() {
+        int ct = 0;
+        for (int i = 0; i < links.length; i++) {
+            if (i == 0 || !samePair(links[i], links[i - 1])) {
+                ct++;
+            }
+        }
+        return ct;
+    }
+
+    /**
+     * @return the number of pairs of entities that are linked by more than one relation.
+     */
+    public int countMultiRelationPairs() {
+        int ct = 0;
+        for (int i = 1; i < links.length; i++) {
+            if (samePair(links[i], links[i - 1]) && (i == 1 || !samePair(links[i - 1], links[i - 2]))) {
+                ct++;
+            }
+        }
+        return ct;
+    }
+
+    /**
+     * @return the number of pairs of entities that are linked in both sets.
+     */
+    public int countSharedPairs(LinkSet other) {
+        checkCodec(other);
+        long[] a = links, b = other.links;
+        int i = 0, j = 0, ct = 0;
+        while (i < a.length && j < b.length) {
+            long pair_a = a[i] >>> LinkCodec.RELATION_BITS;
+            long pair_b = b[j] >>> LinkCodec.RELATION_BITS;
+            if (pair_a <= pair_b) {
+                while (i < a.length && a[i] >>> LinkCodec.RELATION_BITS == pair_a) {
+                    i++;
+                }
+            }
+            if (pair_b <= pair_a) {
+                while (j < b.length && b[j] >>> LinkCodec.RELATION_BITS == pair_b) {
+                    j++;
+                }
+            }
+            if (pair_a == pair_b) {
+                ct++;
+            }
+        }
+        return ct;
+    }
+
+    private static boolean samePair(long l1, long l2) {
+        return l1 >>> LinkCodec.RELATION_BITS == l2 >>> LinkCodec.RELATION_BITS;
+    }
+
+    /**
+     * @return a copy of the packed links, in ascending order.
+     */
+    public long[] toArray() {
+        return links.clone();
+    }
+
+    public LinkSet union(LinkSet other) {
+        checkCodec(other);
+        long[] a = links, b = other.links;
+        long[] merged = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                merged[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            merged[n++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[n++] = b[j++];
+        }
+        return new LinkSet(codec, Arrays.copyOf(merged, n));
+    }
+
+    public LinkSet intersection(LinkSet other) {
+        checkCodec(other);
+        long[] a = links, b = other.links;
+        long[] merged = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                merged[n++] = a[i++];
+                j++;
+            }
+        }
+        return new LinkSet(codec, Arrays.copyOf(merged, n));
+    }
+
+    /**
+     * @return the links of this set that are not in the other set.
+     */
+    public LinkSet difference(LinkSet other) {
+        checkCodec(other);
+        long[] a = links, b = other.links;
+        long[] merged = new long[a.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length) {
+            while (j < b.length && b[j] < a[i]) {
+                j++;
+            }
+            if (j == b.length || b[j] != a[i]) {
+                merged[n++] = a[i];
+            }
+            i++;
+        }
+        return new LinkSet(codec, Arrays.copyOf(merged, n));
+    }
+
+    private void checkCodec(LinkSet other) {
+        if (other.codec != codec) {
+            throw new IllegalArgumentException("Link sets of different codecs cannot be combined");
+        }
+    }
+
+    /**
+     * Iterates over the links in the order of their packed ids, decoding them on the fly.
+     */
+    @Override
+    public Iterator<LinkBetweenEntity> iterator() {
+        return new Iterator<LinkBetweenEntity>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < links.length;
+            }
+
+            @Override
+            public LinkBetweenEntity next() {
+                if (i >= links.length) {
+                    throw new NoSuchElementException();
+                }
+                return codec.decode(links[i++]);
+            }
+        };
+    }
+}
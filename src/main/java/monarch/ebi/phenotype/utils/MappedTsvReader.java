@@ -0,0 +1,201 @@
+package monarch.ebi.phenotype.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Reads a UTF-8 encoded, tab separated file with a header line through a read-only memory mapping. Opening the
+ * reader only finds the line breaks; rows are views over the mapped file, and a field is decoded into a String only
+ * when it is asked for. Lines may end with \n or \r\n.
+ */
+public class MappedTsvReader implements Closeable, Iterable<MappedTsvReader.Row> {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final String[] header;
+    private final Map<String, Integer> columns = new HashMap<>();
+    private int[] line_starts = new int[16];
+    private int[] line_ends = new int[16];
+    private int ct_lines = 0;
+
+    public MappedTsvReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("TSV file too large to map: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            indexLines();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        header = ct_lines == 0 ? new String[0] : new Row(0).toString().split("\t", -1);
+        for (int i = 0; i < header.length; i++) {
+            columns.putIfAbsent(header[i], i);
+        }
+    }
+
+    private void indexLines() {
+        int limit = buffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                addLine(start, i > start && buffer.get(i - 1) == '\r' ? i - 1 : i);
+                start = i + 1;
+            }
+        }
+        if (start < limit) {
+            addLine(start, buffer.get(limit - 1) == '\r' ? limit - 1 : limit);
+        }
+    }
+
+    private void addLine(int start, int end) {
+        if (ct_lines == line_starts.length) {
+            line_starts = Arrays.copyOf(line_starts, ct_lines * 2);
+            line_ends = Arrays.copyOf(line_ends, ct_lines * 2);
+        }
+        line_starts[ct_lines] = start;
+        line_ends[ct_lines] = end;
+        ct_lines++;
+    }
+
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    /**
+     * @return the index of the column with the given name in the header, or -1 if there is no such column.
+     */
+    public int getColumn(String name) {
+        Integer i = columns.get(name);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return the number of rows, not counting the header.
+     */
+    public int size() {
+        return Math.max(0, ct_lines - 1);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @param i the index of the row, from 0 to size() - 1.
+     */
+    public Row getRow(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("Row " + i + " of " + size());
+        }
+        return new Row(i + 1);
+    }
+
+    @Override
+    public Iterator<Row> iterator() {
+        return new Iterator<Row>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size();
+            }
+
+            @Override
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return getRow(i++);
+            }
+        };
+    }
+
+    /**
+     * Closes the file. The mapping, and so the rows, stay readable until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        ByteBuffer b = buffer.duplicate();
+        b.position(start);
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A line of the file. The field boundaries are found on first access.
+     */
+    public class Row {
+        private final int line;
+        private int[] field_starts;
+
+        private Row(int line) {
+            this.line = line;
+        }
+
+        private int[] fields() {
+            if (field_starts == null) {
+                int[] starts = new int[Math.max(1, header.length)];
+                int ct = 0;
+                starts[ct++] = line_starts[line];
+                for (int i = line_starts[line]; i < line_ends[line]; i++) {
+                    if (buffer.get(i) == '\t') {
+                        if (ct == starts.length) {
+                            starts = Arrays.copyOf(starts, ct * 2);
+                        }
+                        starts[ct++] = i + 1;
+                    }
+                }
+                field_starts = Arrays.copyOf(starts, ct);
+            }
+            return field_starts;
+        }
+
+        /**
+         * @return the number of fields in the row, which may differ from the number of columns in the header.
+         */
+        public int size() {
+            return fields().length;
+        }
+
+        /**
+         * @return the field in the given column, or "" if the row has no such field.
+         */
+        public String get(int column) {
+            int[] starts = fields();
+            if (column < 0 || column >= starts.length) {
+                return "";
+            }
+            int end = column + 1 < starts.length ? starts[column + 1] - 1 : line_ends[line];
+            return decode(starts[column], end);
+        }
+
+        /**
+         * @return the field in the column with the given name, or "" if there is no such column or field. As an
+         * unknown column cannot be told apart from an empty field, callers for which a missing column is an error
+         * should resolve it with {@link MappedTsvReader#getColumn(String)} first.
+         */
+        public String get(String column) {
+            return get(getColumn(column));
+        }
+
+        @Override
+        public String toString() {
+            return decode(line_starts[line], line_ends[line]);
+        }
+    }
+}
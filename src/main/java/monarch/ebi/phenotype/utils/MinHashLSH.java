@@ -0,0 +1,194 @@
+package monarch.ebi.phenotype.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Candidate generation for the similarity apps based on MinHash signatures and locality sensitive hashing.
+ * The signature of a class is computed over its ancestor set in the {@link AncestorIndex} using bands x rows
+ * hash functions. The signature is cut into bands, and two classes become a candidate pair if all values of
+ * at least one band agree. The probability for a pair with Jaccard similarity s to become a candidate is
+ * 1 - (1 - s^rows)^bands, so more bands increase recall, and more rows per band increase precision.
+ */
+public class MinHashLSH {
+
+    private static final long SEED = 42L;
+
+    private final AncestorIndex index;
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    // Per band, the band keys of all indexed columns in ascending order, and the column positions in the same order.
+    private long[][] band_keys;
+    private int[][] band_cols;
+
+    public MinHashLSH(AncestorIndex index, int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("LSH needs at least one band and one row per band, got " + bands + "x" + rows);
+        }
+        this.index = index;
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        Random random = new Random(SEED);
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * Parses a configuration of the form lsh:BANDS:ROWS.
+     *
+     * @return the LSH configured by the string, or null if the string is not an LSH configuration.
+     */
+    public static MinHashLSH parse(AncestorIndex index, String config) {
+        if (config == null || !config.startsWith("lsh:")) {
+            return null;
+        }
+        String[] parts = config.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("LSH configuration must be of the form lsh:BANDS:ROWS, got " + config);
+        }
+        return new MinHashLSH(index, Integer.valueOf(parts[1]), Integer.valueOf(parts[2]));
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Builds the band buckets for the given column classes. Positions in col_ids are the column numbers returned
+     * by {@link #candidates(int, int[], int)}; ids < 0 are never returned as candidates.
+     */
+    public void indexColumns(int[] col_ids) {
+        int known = 0;
+        for (int id : col_ids) {
+            if (id >= 0 && index.hasAncestors(id)) {
+                known++;
+            }
+        }
+        long[][] keys = new long[bands][known];
+        int[] cols = new int[known];
+        int k = 0;
+        for (int col = 0; col < col_ids.length; col++) {
+            int id = col_ids[col];
+            if (id >= 0 && index.hasAncestors(id)) {
+                long[] bk = bandKeys(id);
+                for (int b = 0; b < bands; b++) {
+                    keys[b][k] = bk[b];
+                }
+                cols[k] = col;
+                k++;
+            }
+        }
+        band_keys = new long[bands][];
+        band_cols = new int[bands][];
+        for (int b = 0; b < bands; b++) {
+            sortBand(b, keys[b], cols);
+        }
+    }
+
+    private void sortBand(int b, long[] keys, int[] cols) {
+        // Sort the (key, col) pairs by key, then by col, through an index array.
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> keys[x] != keys[y] ? Long.compare(keys[x], keys[y]) : Integer.compare(cols[x], cols[y]));
+        band_keys[b] = new long[keys.length];
+        band_cols[b] = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            band_keys[b][i] = keys[order[i]];
+            band_cols[b][i] = cols[order[i]];
+        }
+    }
+
+    /**
+     * @param row_id the id of the class for which candidates are generated
+     * @param stamps scratch array of at least the number of indexed columns, owned by the calling thread
+     * @param mark   a value that does not yet occur in stamps, used to remove duplicate candidates
+     * @return the columns that share at least one band with the row class, in ascending order.
+     */
+    public int[] candidates(int row_id, int[] stamps, int mark) {
+        if (row_id < 0 || !index.hasAncestors(row_id)) {
+            return new int[0];
+        }
+        long[] bk = bandKeys(row_id);
+        int[] found = new int[16];
+        int ct = 0;
+        for (int b = 0; b < bands; b++) {
+            long[] keys = band_keys[b];
+            int i = lowerBound(keys, bk[b]);
+            while (i < keys.length && keys[i] == bk[b]) {
+                int col = band_cols[b][i];
+                if (stamps[col] != mark) {
+                    stamps[col] = mark;
+                    if (ct == found.length) {
+                        found = Arrays.copyOf(found, ct * 2);
+                    }
+                    found[ct++] = col;
+                }
+                i++;
+            }
+        }
+        int[] candidates = Arrays.copyOf(found, ct);
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    private long[] bandKeys(int id) {
+        int[] signature = signature(id);
+        long[] keys = new long[bands];
+        for (int b = 0; b < bands; b++) {
+            long h = b;
+            for (int r = 0; r < rows; r++) {
+                h = mix(h * 31 + signature[b * rows + r]);
+            }
+            keys[b] = h;
+        }
+        return keys;
+    }
+
+    /**
+     * @return the MinHash signature of the ancestor set of the class with the given id.
+     */
+    public int[] signature(int id) {
+        int[] signature = new int[seeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int a : index.ancestors(id)) {
+            for (int h = 0; h < seeds.length; h++) {
+                int v = (int) (mix(a ^ seeds[h]) >>> 33);
+                if (v < signature[h]) {
+                    signature[h] = v;
+                }
+            }
+        }
+        return signature;
+    }
+
+    private static int lowerBound(long[] keys, long key) {
+        int lo = 0;
+        int hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // SplitMix64 finaliser
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
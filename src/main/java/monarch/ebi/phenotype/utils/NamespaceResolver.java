@@ -0,0 +1,105 @@
+package monarch.ebi.phenotype.utils;
+
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Resolves IRIs and CURIEs to the namespace (ontology or resource) they belong to, based on a prefix map loaded
+ * from YAML. See src/main/resources/namespaces.yaml for the format and the default map. Prefixes and suffixes are
+ * compiled into tries, so a lookup costs O(length of the IRI) regardless of the size of the map.
+ */
+public class NamespaceResolver {
+
+    public static final String OTHER = "other";
+    private static final String DEFAULT_RESOURCE = "/namespaces.yaml";
+
+    private final String obo;
+    private final PrefixTrie<String> prefixes = new PrefixTrie<>();
+    private final PrefixTrie<String> reversed_suffixes = new PrefixTrie<>();
+
+    @SuppressWarnings("unchecked")
+    private NamespaceResolver(Map<String, Object> config) {
+        Object o = config.get("obo");
+        this.obo = o == null ? null : o.toString();
+        for (Map.Entry<String, Object> e : ((Map<String, Object>) config.getOrDefault("prefixes", Collections.emptyMap())).entrySet()) {
+            prefixes.put(e.getKey(), e.getValue().toString());
+        }
+        for (Map.Entry<String, Object> e : ((Map<String, Object>) config.getOrDefault("suffixes", Collections.emptyMap())).entrySet()) {
+            reversed_suffixes.put(new StringBuilder(e.getKey()).reverse().toString(), e.getValue().toString());
+        }
+    }
+
+    /**
+     * @return a resolver for the default namespace map shipped with this package.
+     */
+    public static NamespaceResolver getDefault() {
+        try (InputStream in = NamespaceResolver.class.getResourceAsStream(DEFAULT_RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Namespace map " + DEFAULT_RESOURCE + " not found on the classpath");
+            }
+            return load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static NamespaceResolver load(File namespace_map) throws IOException {
+        try (InputStream in = new FileInputStream(namespace_map)) {
+            return load(in);
+        }
+    }
+
+    public static NamespaceResolver load(InputStream in) {
+        Map<String, Object> config = new Yaml().load(in);
+        return new NamespaceResolver(config == null ? Collections.emptyMap() : config);
+    }
+
+    /**
+     * @return the namespace of the IRI, or "other" if it is not known.
+     */
+    public String getNamespaceFromIRI(String iri) {
+        if (obo != null && iri.startsWith(obo)) {
+            int end = iri.indexOf('_', obo.length());
+            return iri.substring(obo.length(), end < 0 ? iri.length() : end).toLowerCase();
+        }
+        String ns = prefixes.longestPrefixMatch(iri);
+        if (ns == null) {
+            ns = reversed_suffixes.longestPrefixMatch(new StringBuilder(iri).reverse());
+        }
+        return ns == null ? OTHER : ns;
+    }
+
+    /**
+     * @return the (lower-cased) prefix of the CURIE, or "other" if the value is not a CURIE.
+     */
+    public String getNamespaceFromCurie(String curie) {
+        // Like curie.split(":").length == 2: trailing colons are ignored, and exactly one colon must remain.
+        int end = curie.length();
+        while (end > 0 && curie.charAt(end - 1) == ':') {
+            end--;
+        }
+        int colon = curie.indexOf(':');
+        if (colon < 0 || colon >= end) {
+            return OTHER;
+        }
+        int second = curie.indexOf(':', colon + 1);
+        if (second >= 0 && second < end) {
+            return OTHER;
+        }
+        return curie.substring(0, colon).toLowerCase();
+    }
+
+    /**
+     * @return the namespace of the IRI if it is known, else the prefix of the value if it is a CURIE, else "other".
+     */
+    public String getNamespace(String iri_or_curie) {
+        String ns = getNamespaceFromIRI(iri_or_curie);
+        if (ns.equals(OTHER)) {
+            ns = getNamespaceFromCurie(iri_or_curie);
+        }
+        return ns;
+    }
+}
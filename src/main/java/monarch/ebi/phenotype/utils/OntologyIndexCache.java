@@ -0,0 +1,72 @@
+package monarch.ebi.phenotype.utils;
+
+import com.google.common.collect.MapMaker;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Keeps one index per ontology, built on first use. The cache registers itself as change listener with the manager of
+ * every ontology it indexes; as soon as an ontology in the imports closure of an indexed ontology changes (axioms,
+ * annotations or imports), the index is dropped and rebuilt on the next lookup. The imports closure is recorded when
+ * the index is built, so that handling a change never reads any ontology: ontologies in other managers may be changed
+ * concurrently, for example when two ontologies are checked for incoherence on separate threads.
+ *
+ * Ontologies are held weakly, so that indexing an ontology does not keep it alive after it has been removed from
+ * its manager. They are compared by identity, as OWLOntology.equals only compares ontology IDs: two releases of the
+ * same ontology loaded into different managers must not share an index.
+ */
+public class OntologyIndexCache<T> implements OWLOntologyChangeListener {
+
+    private final Function<OWLOntology, T> builder;
+    private final Map<OWLOntology, Entry<T>> indexes = new MapMaker().weakKeys().makeMap();
+    private final Set<OWLOntologyManager> managers = Collections.newSetFromMap(new MapMaker().weakKeys().<OWLOntologyManager, Boolean>makeMap());
+
+    private static final class Entry<T> {
+        private final T index;
+        // Weak, like the keys, so that an index does not keep the ontologies it was built from alive.
+        private final Set<OWLOntology> imports_closure = Collections.newSetFromMap(new MapMaker().weakKeys().<OWLOntology, Boolean>makeMap());
+
+        private Entry(OWLOntology o, T index) {
+            this.index = index;
+            // The closure may hold the implementation behind o rather than o itself, as passed to the cache and
+            // reported in change events, so o is added explicitly.
+            imports_closure.add(o);
+            imports_closure.addAll(o.getImportsClosure());
+        }
+    }
+
+    public OntologyIndexCache(Function<OWLOntology, T> builder) {
+        this.builder = builder;
+    }
+
+    public synchronized T get(OWLOntology o) {
+        Entry<T> entry = indexes.get(o);
+        if (entry == null) {
+            OWLOntologyManager man = o.getOWLOntologyManager();
+            if (managers.add(man)) {
+                man.addOntologyChangeListener(this);
+            }
+            entry = new Entry<>(o, builder.apply(o));
+            indexes.put(o, entry);
+        }
+        return entry.index;
+    }
+
+    public synchronized void invalidate(OWLOntology o) {
+        indexes.remove(o);
+    }
+
+    @Override
+    public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        if (indexes.isEmpty()) {
+            return;
+        }
+        Set<OWLOntology> changed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (OWLOntologyChange change : changes) {
+            changed.add(change.getOntology());
+        }
+        indexes.values().removeIf(entry -> changed.stream().anyMatch(entry.imports_closure::contains));
+    }
+}
@@ -4,7 +4,6 @@ import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
-import org.semanticweb.owlapi.search.EntitySearcher;
 import org.semanticweb.owlapi.util.OWLObjectTransformer;
 
 import java.util.*;
@@ -13,26 +12,28 @@ import java.util.stream.Collectors;
 public class OntologyUtils {
 
     private static OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private static final Set<OWLAnnotationProperty> LABEL_PROPERTIES = new HashSet<>(Arrays.asList(
+            df.getRDFSLabel(),
+            df.getOWLAnnotationProperty(IRI.create("http://www.w3.org/2004/02/skos/core#prefLabel")),
+            df.getOWLAnnotationProperty(IRI.create("http://www.w3.org/2004/02/skos/core#altLabel")),
+            df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym"))));
+    private static final Set<OWLAnnotationProperty> SYNONYM_PROPERTIES = new HashSet<>(Arrays.asList(
+            df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym")),
+            df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasRelatedSynonym")),
+            df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasNarrowSynonym")),
+            df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasBroadSynonym"))));
+    private static final OWLAnnotationProperty ap_definition = df.getOWLAnnotationProperty(IRI.create("http://purl.obolibrary.org/obo/IAO_0000115"));
 
     public static void p(Object label) {
         System.out.println(label);
     }
 
     public static Set<String> getLabels(OWLEntity c, OWLOntology o) {
-
-        Set<OWLAnnotationProperty> annops = new HashSet<>();
-        annops.add(df.getRDFSLabel());
-        annops.add(df.getOWLAnnotationProperty(IRI.create("http://www.w3.org/2004/02/skos/core#prefLabel")));
-        annops.add(df.getOWLAnnotationProperty(IRI.create("http://www.w3.org/2004/02/skos/core#altLabel")));
-        annops.add(df.getOWLAnnotationProperty(IRI.create("http://www.geneontology.org/formats/oboInOwl#hasExactSynonym")));
-
-        return getLabels(c, o, annops);
+        return getLabels(c, o, LABEL_PROPERTIES);
     }
 
     public static Set<String> getLabelsRDFS(OWLEntity c, OWLOntology o) {
-        Set<OWLAnnotationProperty> annops = new HashSet<>();
-        annops.add(df.getRDFSLabel());
-        return getLabels(c, o, annops);
+        return getLabels(c, o, Collections.singleton(df.getRDFSLabel()));
     }
 
     public static Set<String> getLabelsRDFSIfExistsElseOther(OWLEntity c, OWLOntology o) {
@@ -43,8 +44,12 @@ public class OntologyUtils {
         return labels;
     }
 
+    public static Set<String> getSynonyms(OWLEntity c, OWLOntology o) {
+        return getLabels(c, o, SYNONYM_PROPERTIES);
+    }
+
     public static boolean isObsolete(OWLEntity c, OWLOntology o) {
-        Set<String> labels = getLabels(c,o,new HashSet<>(Collections.singleton(df.getOWLDeprecated())));
+        Set<String> labels = getLabels(c,o,Collections.singleton(df.getOWLDeprecated()));
         if(!labels.isEmpty()) {
             return new ArrayList<>(labels).get(0).equals("true");
         }
@@ -54,40 +59,35 @@ public class OntologyUtils {
 
 
     private static Set<String> getLabels(OWLEntity c, OWLOntology o, Set<OWLAnnotationProperty> annops) {
+        AnnotationIndex index = AnnotationIndex.get(o);
         Set<String> labels = new HashSet<>();
-        for(OWLOntology i:o.getImportsClosure()) {
-            for(OWLAnnotationProperty annop:annops) {
-                for (OWLAnnotation a : EntitySearcher.getAnnotations(c, i, annop)) {
-                    OWLAnnotationValue value = a.getValue();
-                    if (value instanceof OWLLiteral) {
-                        String val = ((OWLLiteral) value).getLiteral();
-                        labels.add(val);
-                    }
-                }
-            }
+        for(OWLAnnotationProperty annop:annops) {
+            Collections.addAll(labels, index.getValues(c, annop));
         }
         return labels;
     }
 
     private static  Map<OWLAnnotationProperty,Set<String>> getAllAnnotations(OWLEntity c, OWLOntology o, Set<OWLAnnotationProperty> annops) {
+        AnnotationIndex index = AnnotationIndex.get(o);
         Map<OWLAnnotationProperty,Set<String>> labels = new HashMap<>();
-        for(OWLOntology i:o.getImportsClosure()) {
-            for(OWLAnnotationProperty annop:annops) {
-                labels.put(annop,new HashSet<>());
-
-                for (OWLAnnotation a : EntitySearcher.getAnnotations(c, i, annop)) {
-                    OWLAnnotationValue value = a.getValue();
-                    if (value instanceof OWLLiteral) {
-                        String val = ((OWLLiteral) value).getLiteral();
-                        labels.get(annop).add(val);
-                    }
-                }
-            }
+        for(OWLAnnotationProperty annop:annops) {
+            labels.put(annop,new HashSet<>(Arrays.asList(index.getValues(c, annop))));
         }
         return labels;
     }
 
     public static OWLClassExpression getEQ(OWLOntology o, OWLClass p) {
+        return DefinitionIndex.get(o).getEQ(p);
+    }
+
+    public static OWLClassExpression getHasAffectedEntity(OWLOntology o, OWLClass p) {
+        return DefinitionIndex.get(o).getHasAffectedEntity(p);
+    }
+
+    /*
+    Linear scans over the axioms of the ontology, kept as reference for the indexed lookups above.
+     */
+    static OWLClassExpression getEQByScan(OWLOntology o, OWLClass p) {
         for(OWLEquivalentClassesAxiom ax:o.getAxioms(AxiomType.EQUIVALENT_CLASSES)) {
             if(ax.getNamedClasses().contains(p)) {
                 for(OWLClassExpression ce:ax.getClassExpressions()) {
@@ -99,7 +99,7 @@ public class OntologyUtils {
         }
         return null;
     }
-    public static OWLClassExpression getHasAffectedEntity(OWLOntology o, OWLClass p) {
+    static OWLClassExpression getHasAffectedEntityByScan(OWLOntology o, OWLClass p) {
         for(OWLAxiom ax:o.getAxioms(p, Imports.INCLUDED)) {
             if (ax instanceof OWLSubClassOfAxiom) {
                 OWLSubClassOfAxiom sbcl = (OWLSubClassOfAxiom) ax;
@@ -168,12 +168,9 @@ public class OntologyUtils {
 
 
     public static Set<String> getRDFSDescription(OWLEntity c, OWLOntology o) {
-        Set<OWLAnnotationProperty> annops = new HashSet<>();
-        annops.add(df.getOWLAnnotationProperty(IRI.create("http://purl.obolibrary.org/obo/IAO_0000115")));
-        Set<String> labels = getLabels(c, o, annops);
+        Set<String> labels = getLabels(c, o, Collections.singleton(ap_definition));
         if(labels.isEmpty()) {
-            annops.add(df.getRDFSComment());
-            return getLabels(c,o,annops);
+            return getLabels(c, o, new HashSet<>(Arrays.asList(ap_definition, df.getRDFSComment())));
         }
         return labels;
     }
@@ -0,0 +1,100 @@
+package monarch.ebi.phenotype.utils;
+
+import java.util.Arrays;
+
+/**
+ * A character trie mapping string prefixes to values. Looking up the longest prefix of a string that is in the trie
+ * costs O(length of the string), independent of the number of prefixes.
+ */
+public class PrefixTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private int size = 0;
+
+    private static class Node<V> {
+        private char[] keys = new char[0];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node<V>[] children = new Node[0];
+        private V value;
+
+        private Node<V> child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        private Node<V> getOrAddChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            i = -i - 1;
+            Node<V> child = new Node<>();
+            char[] k = new char[keys.length + 1];
+            Node<V>[] ch = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(keys, 0, k, 0, i);
+            System.arraycopy(keys, i, k, i + 1, keys.length - i);
+            System.arraycopy(children, i, ch, i + 1, children.length - i);
+            k[i] = c;
+            ch[i] = child;
+            keys = k;
+            children = ch;
+            return child;
+        }
+    }
+
+    /**
+     * Maps the prefix to the value, replacing any value the prefix had before.
+     */
+    public void put(String prefix, V value) {
+        Node<V> n = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            n = n.getOrAddChild(prefix.charAt(i));
+        }
+        if (n.value == null) {
+            size++;
+        }
+        n.value = value;
+    }
+
+    /**
+     * @return the value of the longest prefix of s in the trie, or null if no prefix of s is in the trie.
+     */
+    public V longestPrefixMatch(CharSequence s) {
+        Node<V> n = root;
+        V match = root.value;
+        for (int i = 0; i < s.length(); i++) {
+            n = n.child(s.charAt(i));
+            if (n == null) {
+                break;
+            }
+            if (n.value != null) {
+                match = n.value;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @return true if any prefix of s is in the trie.
+     */
+    public boolean matchesPrefix(CharSequence s) {
+        Node<V> n = root;
+        if (n.value != null) {
+            return true;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            n = n.child(s.charAt(i));
+            if (n == null) {
+                return false;
+            }
+            if (n.value != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -5,36 +5,40 @@ import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.io.OWLObjectRenderer;
 import org.semanticweb.owlapi.manchestersyntax.renderer.ManchesterOWLSyntaxOWLObjectRendererImpl;
 import org.semanticweb.owlapi.model.*;
-import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
 import java.util.*;
+import java.util.regex.Pattern;
 
+/**
+ * Renders OWL objects with the IRIs replaced by labels. The labels and descriptions are kept in an immutable
+ * {@link LabelIndex} that is swapped as a whole when labels are added, and each thread renders with its own
+ * renderer instances, so the RenderManager can be used from parallel workers without locking.
+ */
 public class RenderManager {
 
-    private OWLObjectRenderer ren = new DLSyntaxObjectRenderer();
-    private OWLObjectRenderer renManchester = new ManchesterOWLSyntaxOWLObjectRendererImpl();
+    private final ThreadLocal<OWLObjectRenderer> ren = ThreadLocal.withInitial(DLSyntaxObjectRenderer::new);
+    private final ThreadLocal<OWLObjectRenderer> renManchester = ThreadLocal.withInitial(ManchesterOWLSyntaxOWLObjectRendererImpl::new);
 
-    private Map<OWLEntity, String> labels = new HashMap<>();
-    private Map<OWLEntity, String> descriptions = new HashMap<>();
+    private volatile LabelIndex index = LabelIndex.EMPTY;
     private OWLDataFactory df = OWLManager.getOWLDataFactory();
 
-    private static RenderManager instance = null;
+    private static final Pattern NEWLINE = Pattern.compile("(\n|\r\n|\r)");
 
 
     private RenderManager() {
     }
 
+    private static class Holder {
+        private static final RenderManager instance = new RenderManager();
+    }
+
     public static RenderManager getInstance() {
-        if(instance==null) {
-            instance = new RenderManager();
-        }
-        return instance;
+        return Holder.instance;
     }
 
-    public void addLabel(OWLOntology o) {
-        o.getSignature(Imports.INCLUDED).forEach(s -> OntologyUtils.getLabelsRDFSIfExistsElseOther(s, o).forEach(l -> labels.put(s, hackLabel(s,l))));
-        o.getSignature(Imports.INCLUDED).forEach(s -> OntologyUtils.getRDFSDescription(s, o).forEach(l -> descriptions.put(s, l)));
+    public synchronized void addLabel(OWLOntology o) {
+        index = index.merge(LabelIndex.get(o));
     }
 
     private String hackLabel(OWLEntity e,String l) {
@@ -45,38 +49,100 @@ public class RenderManager {
         }
     }
 
-    public void clear() {
-        labels.clear();
+    public synchronized void clear() {
+        index = index.withoutLabels();
     }
 
     public String render(OWLObject ax) {
-        String s = ren.render(ax);
-        for (OWLEntity k : ax.getSignature()) {
-            String l = getLabel(k);
-            s = replaceIRIWithLabel(s, k, l);
-        }
-        return s;
+        return replaceIRIsWithLabels(ren.get().render(ax), labelsByRemainder(ax));
     }
 
     public String renderManchester(OWLObject ax) {
-        String s = renManchester.render(ax);
+        return replaceIRIsWithLabels(renManchester.get().render(ax), labelsByRemainder(ax));
+    }
+
+    private Map<String, String> labelsByRemainder(OWLObject ax) {
+        Map<String, String> remainders = new HashMap<>();
         for (OWLEntity k : ax.getSignature()) {
-            String l = getLabel(k);
-            s = replaceIRIWithLabel(s, k, l);
+            String remainder = k.getIRI().getRemainder().or("");
+            if (!remainder.isEmpty()) {
+                remainders.putIfAbsent(remainder, getLabel(k));
+            }
         }
-        return s;
+        return remainders;
     }
 
     private String replaceIRIWithLabel(String s, OWLEntity k, String l) {
-        return s.replaceAll(k.getIRI().getRemainder().or(""), "'"+l+"'");
+        String remainder = k.getIRI().getRemainder().or("");
+        if (remainder.isEmpty()) {
+            return s;
+        }
+        return replaceIRIsWithLabels(s, Collections.singletonMap(remainder, l));
+    }
+
+    /**
+     * Replaces every name in the rendered string that is the IRI remainder of an entity with the quoted label of
+     * that entity, in a single pass. Names are runs of letters, digits and '_', which may continue with '.' and '-'.
+     * As the renderers put a '.' directly after a property name (DL syntax), a name that is not known as a whole is
+     * also tried without its trailing '.'-separated parts. Only whole names are replaced, and labels are inserted
+     * literally, so neither remainders nor labels are interpreted as regular expressions.
+     */
+    static String replaceIRIsWithLabels(String s, Map<String, String> labels) {
+        if (labels.isEmpty()) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length() + 16 * labels.size());
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (!isNameStart(c)) {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int end = i + 1;
+            while (end < n && isNamePart(s.charAt(end))) {
+                end++;
+            }
+            int cut = end;
+            String label = labels.get(s.substring(i, cut));
+            while (label == null) {
+                int dot = s.lastIndexOf('.', cut - 1);
+                if (dot <= i) {
+                    break;
+                }
+                cut = dot;
+                label = labels.get(s.substring(i, cut));
+            }
+            if (label != null) {
+                sb.append('\'').append(label).append('\'');
+                i = cut;
+            } else {
+                int dot = s.indexOf('.', i);
+                cut = dot < 0 || dot > end ? end : dot;
+                sb.append(s, i, cut);
+                i = cut;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isNameStart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private static boolean isNamePart(char c) {
+        return isNameStart(c) || c == '.' || c == '-';
     }
 
     public String getLabel(OWLEntity k) {
-        return labels.get(k) == null ? k.getIRI().getRemainder().or("") : labels.get(k);
+        String l = index.getLabel(k);
+        return l == null ? k.getIRI().getRemainder().or("") : hackLabel(k, l);
     }
 
     public String renderForMarkdown(OWLObject ax) {
-        return renderManchester(ax).replaceAll("(\n|\r\n|\r)", "  \n");
+        return NEWLINE.matcher(renderManchester(ax)).replaceAll("  \n");
     }
 
     public void renderTreeForMarkdown(OWLClass c, OWLReasoner r, List<String> sb, int level, Set<OWLEntity> k, Map<OWLClass,OWLClassExpression> g, Set<OWLClass> u) {
@@ -115,11 +181,12 @@ public class RenderManager {
     public String stripKnownIRIs(String name) {
         String s = name.replace("http://purl.obolibrary.org/obo/","");
         s = s.replace("https://raw.githubusercontent.com/","");
-        s = s.replaceAll("master/releases/","");
+        s = s.replace("master/releases/","");
         return s;
     }
 
     public String getDescription(OWLClass k) {
-        return descriptions.get(k) == null ? "No description" : descriptions.get(k);
+        String d = index.getDescription(k);
+        return d == null ? "No description" : d;
     }
 }
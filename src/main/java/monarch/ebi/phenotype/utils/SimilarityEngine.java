@@ -0,0 +1,562 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.OWLClass;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scores all pairs of two class lists against an {@link AncestorIndex} in parallel.
+ * The pair matrix is cut into tiles of TILE_SIZE x TILE_SIZE pairs which are scored on a ForkJoinPool. Every
+ * tile collects its matches in its own buffer, and the buffers are merged at the end in row/column order, so
+ * the result is the same regardless of the number of threads used.
+ *
+ * In top-k mode, only the k best matches of every row are kept in a bounded heap per row, so that memory stays
+ * proportional to rows x k. Ties are broken by the IRI of the column class.
+ *
+ * Instead of scoring all pairs, the candidate pairs can be generated with {@link MinHashLSH}; only those are
+ * scored with the exact Jaccard similarity.
+ *
+ * If an {@link InformationContent} is given, the Resnik, Lin and SimGIC similarities are computed in the same pass
+ * as Jaccard, from the same intersection of the ancestor bitsets. The cutoff and the top-k ranking always refer to
+ * the Jaccard similarity.
+ */
+public class SimilarityEngine {
+
+    static final int TILE_SIZE = 256;
+    private static final int PROGRESS_STEPS = 100;
+
+    private final AncestorIndex index;
+    private final int threads;
+    private final InformationContent ic;
+    private final String[] metrics;
+    private final AtomicLong scored_pairs = new AtomicLong();
+
+    public SimilarityEngine(AncestorIndex index, int threads) {
+        this(index, threads, null);
+    }
+
+    public SimilarityEngine(AncestorIndex index, int threads, InformationContent ic) {
+        this.index = index;
+        this.threads = threads;
+        this.ic = ic;
+        this.metrics = ic == null ? new String[]{"jaccard"} : new String[]{"jaccard", "resnik", "lin", "simgic"};
+    }
+
+    /**
+     * @return the names of the metrics every match carries a value for, Jaccard first.
+     */
+    public List<String> getMetrics() {
+        return Arrays.asList(metrics);
+    }
+
+    /**
+     * Computes the Jaccard similarity of every pair in rows x cols and returns all matches with a similarity
+     * above the cutoff, ordered by row and then by column.
+     */
+    public List<Match> allPairs(List<OWLClass> rows, List<OWLClass> cols, double cutoff) {
+        int[] row_ids = ids(rows);
+        int[] col_ids = ids(cols);
+        int row_tiles = tiles(rows.size());
+        int col_tiles = tiles(cols.size());
+        TileBuffer[] buffers = new TileBuffer[row_tiles * col_tiles];
+        if (buffers.length == 0) {
+            return new ArrayList<>();
+        }
+        Progress progress = new Progress((long) rows.size() * (long) cols.size(), "pairs");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new TileTask(0, buffers.length, col_tiles, row_ids, col_ids, cutoff, buffers, progress));
+        } finally {
+            pool.shutdown();
+        }
+        return merge(rows, cols, row_tiles, col_tiles, buffers);
+    }
+
+    /**
+     * Like {@link #allPairs(List, List, double)}, but keeps only the k best matches above the cutoff for every row.
+     * Cols must be sorted by IRI for the tie breaking to be by IRI. The matches of a row are ordered from best to worst.
+     */
+    public List<Match> topK(List<OWLClass> rows, List<OWLClass> cols, double cutoff, int k) {
+        int[] row_ids = ids(rows);
+        int[] col_ids = ids(cols);
+        int row_tiles = tiles(rows.size());
+        RowHeaps[] heaps = new RowHeaps[row_tiles];
+        if (heaps.length == 0 || k <= 0) {
+            return new ArrayList<>();
+        }
+        Progress progress = new Progress((long) rows.size() * (long) cols.size(), "pairs");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RowTileTask(0, heaps.length, k, row_ids, col_ids, cutoff, heaps, progress));
+        } finally {
+            pool.shutdown();
+        }
+
+        return fromHeaps(rows, cols, heaps);
+    }
+
+    /**
+     * Scores only the candidate pairs generated by the given LSH, with the exact Jaccard similarity. If k > 0, only
+     * the k best matches of every row are kept (see {@link #topK(List, List, double, int)}), otherwise all matches above
+     * the cutoff, ordered by row and then by column.
+     */
+    public List<Match> candidatePairs(List<OWLClass> rows, List<OWLClass> cols, double cutoff, int k, MinHashLSH lsh) {
+        int[] row_ids = ids(rows);
+        int[] col_ids = ids(cols);
+        scored_pairs.set(0);
+        lsh.indexColumns(col_ids);
+        int row_tiles = tiles(rows.size());
+        Object[] results = new Object[row_tiles];
+        if (results.length == 0) {
+            return new ArrayList<>();
+        }
+        Progress progress = new Progress(rows.size(), "rows");
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new CandidateTask(0, row_tiles, k, row_ids, col_ids, cutoff, lsh, results, progress));
+        } finally {
+            pool.shutdown();
+        }
+
+        if (k > 0) {
+            return fromHeaps(rows, cols, Arrays.copyOf(results, row_tiles, RowHeaps[].class));
+        }
+        List<Match> matches = new ArrayList<>();
+        for (Object result : results) {
+            TileBuffer b = (TileBuffer) result;
+            for (int i = 0; i < b.size; i++) {
+                matches.add(match(rows.get(b.rows[i]), cols.get(b.cols[i]), b.values, i));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return the number of pairs scored exactly during the last call to {@link #candidatePairs(List, List, double, int, MinHashLSH)}.
+     */
+    public long getScoredPairs() {
+        return scored_pairs.get();
+    }
+
+    /**
+     * Estimates the recall of the LSH candidate generation against exhaustive scoring, on a sample of at most
+     * sample_size evenly spaced rows: the fraction of all pairs above the cutoff that are also found through LSH.
+     */
+    public double recall(List<OWLClass> rows, List<OWLClass> cols, double cutoff, MinHashLSH lsh, int sample_size) {
+        List<OWLClass> sample = new ArrayList<>();
+        int stride = Math.max(1, rows.size() / Math.max(1, sample_size));
+        for (int i = 0; i < rows.size() && sample.size() < sample_size; i += stride) {
+            sample.add(rows.get(i));
+        }
+        int exhaustive = allPairs(sample, cols, cutoff).size();
+        int found = candidatePairs(sample, cols, cutoff, 0, lsh).size();
+        return exhaustive == 0 ? 1.0 : (double) found / (double) exhaustive;
+    }
+
+    private List<Match> fromHeaps(List<OWLClass> rows, List<OWLClass> cols, RowHeaps[] heaps) {
+        List<Match> matches = new ArrayList<>();
+        for (int rt = 0; rt < heaps.length; rt++) {
+            RowHeaps h = heaps[rt];
+            for (int r = 0; r < h.rows(); r++) {
+                int[] order = h.sorted(r);
+                for (int e : order) {
+                    matches.add(match(rows.get(rt * TILE_SIZE + r), cols.get(h.cols[e]), h.values, e));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private List<Match> merge(List<OWLClass> rows, List<OWLClass> cols, int row_tiles, int col_tiles, TileBuffer[] buffers) {
+        int size = 0;
+        for (TileBuffer b : buffers) {
+            size += b.size;
+        }
+        List<Match> matches = new ArrayList<>(size);
+        int[] cursor = new int[buffers.length];
+        for (int rt = 0; rt < row_tiles; rt++) {
+            int row_end = Math.min(rows.size(), (rt + 1) * TILE_SIZE);
+            for (int row = rt * TILE_SIZE; row < row_end; row++) {
+                for (int ct = 0; ct < col_tiles; ct++) {
+                    int t = rt * col_tiles + ct;
+                    TileBuffer b = buffers[t];
+                    while (cursor[t] < b.size && b.rows[cursor[t]] == row) {
+                        matches.add(match(rows.get(row), cols.get(b.cols[cursor[t]]), b.values, cursor[t]));
+                        cursor[t]++;
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private int[] ids(List<OWLClass> classes) {
+        int[] ids = new int[classes.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = index.id(classes.get(i));
+        }
+        return ids;
+    }
+
+    private static int tiles(int n) {
+        return (n + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    private Match match(OWLClass c1, OWLClass c2, double[] values, int entry) {
+        Match match = new ClassMatch(c1, c2);
+        for (int m = 0; m < metrics.length; m++) {
+            match.setValue(metrics[m], values[entry * metrics.length + m]);
+        }
+        return match;
+    }
+
+    /**
+     * Writes the value of every metric for the pair into out, and returns the Jaccard similarity.
+     */
+    private double score(int id1, int id2, double[] out) {
+        if (id1 < 0 || id2 < 0) {
+            Arrays.fill(out, 0.0);
+            return 0.0;
+        }
+        if (ic == null) {
+            out[0] = index.jaccard(id1, id2);
+        } else {
+            ic.similarity(id1, id2, out);
+        }
+        return out[0];
+    }
+
+    private class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int col_tiles;
+        private final int[] row_ids;
+        private final int[] col_ids;
+        private final double cutoff;
+        private final TileBuffer[] buffers;
+        private final Progress progress;
+
+        TileTask(int from, int to, int col_tiles, int[] row_ids, int[] col_ids, double cutoff, TileBuffer[] buffers, Progress progress) {
+            this.from = from;
+            this.to = to;
+            this.col_tiles = col_tiles;
+            this.row_ids = row_ids;
+            this.col_ids = col_ids;
+            this.cutoff = cutoff;
+            this.buffers = buffers;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(from, mid, col_tiles, row_ids, col_ids, cutoff, buffers, progress),
+                        new TileTask(mid, to, col_tiles, row_ids, col_ids, cutoff, buffers, progress));
+                return;
+            }
+            int row_start = (from / col_tiles) * TILE_SIZE;
+            int col_start = (from % col_tiles) * TILE_SIZE;
+            int row_end = Math.min(row_ids.length, row_start + TILE_SIZE);
+            int col_end = Math.min(col_ids.length, col_start + TILE_SIZE);
+            TileBuffer buffer = new TileBuffer(metrics.length);
+            double[] values = new double[metrics.length];
+            for (int row = row_start; row < row_end; row++) {
+                for (int col = col_start; col < col_end; col++) {
+                    if (score(row_ids[row], col_ids[col], values) > cutoff) {
+                        buffer.add(row, col, values);
+                    }
+                }
+            }
+            buffers[from] = buffer;
+            progress.tileDone((long) (row_end - row_start) * (long) (col_end - col_start), buffer.size);
+        }
+    }
+
+    private class RowTileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final int[] row_ids;
+        private final int[] col_ids;
+        private final double cutoff;
+        private final RowHeaps[] heaps;
+        private final Progress progress;
+
+        RowTileTask(int from, int to, int k, int[] row_ids, int[] col_ids, double cutoff, RowHeaps[] heaps, Progress progress) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.row_ids = row_ids;
+            this.col_ids = col_ids;
+            this.cutoff = cutoff;
+            this.heaps = heaps;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new RowTileTask(from, mid, k, row_ids, col_ids, cutoff, heaps, progress),
+                        new RowTileTask(mid, to, k, row_ids, col_ids, cutoff, heaps, progress));
+                return;
+            }
+            int row_start = from * TILE_SIZE;
+            int row_end = Math.min(row_ids.length, row_start + TILE_SIZE);
+            RowHeaps h = new RowHeaps(row_end - row_start, k, metrics.length);
+            double[] values = new double[metrics.length];
+            // Walk the columns tile by tile, so that the column bitsets stay in cache for the whole row block.
+            for (int col_start = 0; col_start < col_ids.length; col_start += TILE_SIZE) {
+                int held = h.held;
+                int col_end = Math.min(col_ids.length, col_start + TILE_SIZE);
+                for (int row = row_start; row < row_end; row++) {
+                    for (int col = col_start; col < col_end; col++) {
+                        if (score(row_ids[row], col_ids[col], values) > cutoff) {
+                            h.offer(row - row_start, col, values);
+                        }
+                    }
+                }
+                progress.tileDone((long) (row_end - row_start) * (long) (col_end - col_start), h.held - held);
+            }
+            heaps[from] = h;
+        }
+    }
+
+    private class CandidateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final int[] row_ids;
+        private final int[] col_ids;
+        private final double cutoff;
+        private final MinHashLSH lsh;
+        private final Object[] results;
+        private final Progress progress;
+
+        CandidateTask(int from, int to, int k, int[] row_ids, int[] col_ids, double cutoff, MinHashLSH lsh, Object[] results, Progress progress) {
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.row_ids = row_ids;
+            this.col_ids = col_ids;
+            this.cutoff = cutoff;
+            this.lsh = lsh;
+            this.results = results;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new CandidateTask(from, mid, k, row_ids, col_ids, cutoff, lsh, results, progress),
+                        new CandidateTask(mid, to, k, row_ids, col_ids, cutoff, lsh, results, progress));
+                return;
+            }
+            int row_start = from * TILE_SIZE;
+            int row_end = Math.min(row_ids.length, row_start + TILE_SIZE);
+            RowHeaps heaps = k > 0 ? new RowHeaps(row_end - row_start, k, metrics.length) : null;
+            TileBuffer buffer = k > 0 ? null : new TileBuffer(metrics.length);
+            double[] values = new double[metrics.length];
+            int[] stamps = new int[col_ids.length];
+            long scored = 0;
+            for (int row = row_start; row < row_end; row++) {
+                int[] candidates = lsh.candidates(row_ids[row], stamps, row + 1);
+                scored += candidates.length;
+                for (int col : candidates) {
+                    if (score(row_ids[row], col_ids[col], values) > cutoff) {
+                        if (heaps != null) {
+                            heaps.offer(row - row_start, col, values);
+                        } else {
+                            buffer.add(row, col, values);
+                        }
+                    }
+                }
+            }
+            results[from] = heaps != null ? heaps : buffer;
+            scored_pairs.addAndGet(scored);
+            progress.tileDone(row_end - row_start, heaps != null ? heaps.held : buffer.size);
+        }
+    }
+
+    /**
+     * One bounded min-heap of size k per row, stored in flat arrays. The root of every heap is the worst of the
+     * current k best matches of that row: the one with the lowest Jaccard similarity, and among equal similarities
+     * the highest column. The values of all metrics of an entry are stored next to each other, Jaccard first.
+     */
+    private static class RowHeaps {
+        private final int k;
+        private final int width;
+        private final int[] size;
+        private final int[] cols;
+        private final double[] values;
+        private int held = 0;
+
+        RowHeaps(int rows, int k, int width) {
+            this.k = k;
+            this.width = width;
+            this.size = new int[rows];
+            this.cols = new int[rows * k];
+            this.values = new double[rows * k * width];
+        }
+
+        int rows() {
+            return size.length;
+        }
+
+        void offer(int row, int col, double[] entry) {
+            int base = row * k;
+            if (size[row] < k) {
+                int i = size[row]++;
+                held++;
+                set(base + i, col, entry);
+                siftUp(base, i);
+            } else if (worse(base, entry[0], col)) {
+                set(base, col, entry);
+                siftDown(base, size[row]);
+            }
+        }
+
+        /**
+         * @return the positions of the entries of the row, best match first.
+         */
+        int[] sorted(int row) {
+            int base = row * k;
+            Integer[] order = new Integer[size[row]];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = base + i;
+            }
+            Arrays.sort(order, (a, b) -> worse(a, b) ? 1 : (worse(b, a) ? -1 : 0));
+            int[] sorted = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                sorted[i] = order[i];
+            }
+            return sorted;
+        }
+
+        private double score(int e) {
+            return values[e * width];
+        }
+
+        private boolean worse(int a, int b) {
+            return worse(a, score(b), cols[b]);
+        }
+
+        private boolean worse(int a, double score_b, int col_b) {
+            return score(a) < score_b || (score(a) == score_b && cols[a] > col_b);
+        }
+
+        private void set(int e, int col, double[] entry) {
+            cols[e] = col;
+            System.arraycopy(entry, 0, values, e * width, width);
+        }
+
+        private void siftUp(int base, int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(base + i, base + parent)) {
+                    break;
+                }
+                swap(base + i, base + parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int base, int n) {
+            int i = 0;
+            while (true) {
+                int l = 2 * i + 1;
+                if (l >= n) {
+                    break;
+                }
+                int worst = l;
+                int r = l + 1;
+                if (r < n && worse(base + r, base + l)) {
+                    worst = r;
+                }
+                if (!worse(base + worst, base + i)) {
+                    break;
+                }
+                swap(base + i, base + worst);
+                i = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int c = cols[a];
+            cols[a] = cols[b];
+            cols[b] = c;
+            for (int m = 0; m < width; m++) {
+                double v = values[a * width + m];
+                values[a * width + m] = values[b * width + m];
+                values[b * width + m] = v;
+            }
+        }
+    }
+
+    private static class TileBuffer {
+        private final int width;
+        private int size = 0;
+        private int[] rows = new int[16];
+        private int[] cols = new int[16];
+        private double[] values;
+
+        TileBuffer(int width) {
+            this.width = width;
+            this.values = new double[16 * width];
+        }
+
+        void add(int row, int col, double[] entry) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                cols = Arrays.copyOf(cols, size * 2);
+                values = Arrays.copyOf(values, size * 2 * width);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            System.arraycopy(entry, 0, values, size * width, width);
+            size++;
+        }
+    }
+
+    private static class Progress {
+        private final long total;
+        private final String unit;
+        private final long step;
+        private final AtomicLong done = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private volatile long reported = 0;
+
+        Progress(long total, String unit) {
+            this.total = total;
+            this.unit = unit;
+            this.step = Math.max(1, total / PROGRESS_STEPS);
+        }
+
+        void tileDone(long pairs, int tile_matches) {
+            matches.addAndGet(tile_matches);
+            long after = done.addAndGet(pairs);
+            if (after / step > reported) {
+                report();
+            }
+        }
+
+        private synchronized void report() {
+            long now = done.get();
+            if (now / step > reported) {
+                reported = now / step;
+                System.out.println(now + "/" + total + " " + unit + " (" + ((double) now / (double) total) + ", " + matches.get() + " matches)");
+            }
+        }
+    }
+}
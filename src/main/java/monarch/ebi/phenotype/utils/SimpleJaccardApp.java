@@ -1,7 +1,6 @@
 package monarch.ebi.phenotype.utils;
 
 import org.apache.commons.io.FileUtils;
-import org.semanticweb.elk.owlapi.ElkReasonerFactory;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
@@ -26,24 +25,33 @@ public class SimpleJaccardApp {
     private OWLClass root;
     private boolean materialise_subconcepts;
     private double cutoff;
+    private int threads;
+    private int top_k;
+    private String lsh_config;
+    private String ic_config;
+    private static final int LSH_RECALL_SAMPLE = 1000;
 
 
-    private SimpleJaccardApp(File ontology_file,File c1_list_file,File c2_list_file, String root, File data_file, boolean materialise_subconcepts, double cutoff) throws IOException, OWLOntologyCreationException {
+    private SimpleJaccardApp(File ontology_file,File c1_list_file,File c2_list_file, String root, File data_file, boolean materialise_subconcepts, double cutoff, int threads, int top_k, String lsh_config, String ic_config) throws IOException, OWLOntologyCreationException {
         this.ontology_file = ontology_file;
         this.data_file = data_file;
         this.root = cl(root);
         this.materialise_subconcepts = materialise_subconcepts;
         this.cutoff = cutoff;
+        this.threads = threads;
+        this.top_k = top_k;
+        this.lsh_config = lsh_config;
+        this.ic_config = ic_config;
         FileUtils.readLines(c1_list_file, "utf-8").forEach(e -> c1_classes.add(e));
         FileUtils.readLines(c2_list_file, "utf-8").forEach(e -> c2_classes.add(e));
         run();
     }
 
-    private void run() throws OWLOntologyCreationException {
+    private void run() throws OWLOntologyCreationException, IOException {
         OWLOntologyManager man = OWLManager.createOWLOntologyManager();
         OWLOntology o = man.loadOntology(IRI.create(ontology_file));
         long start = System.currentTimeMillis();
-        phenotype.addAll(new ElkReasonerFactory().createReasoner(o).getSubClasses(root,false).getFlattened());
+        phenotype.addAll(TaxonomySnapshot.createReasoner(o).getSubClasses(root,false).getFlattened());
         phenotype.remove(df.getOWLThing());
         phenotype.remove(df.getOWLNothing());
 
@@ -56,7 +64,7 @@ public class SimpleJaccardApp {
 
         long end_materialise = System.currentTimeMillis();
 
-        OWLReasoner elk = new ElkReasonerFactory().createReasoner(o);
+        OWLReasoner elk = TaxonomySnapshot.createReasoner(o);
         ren.addLabel(o);
         phenotype.removeAll(elk.getUnsatisfiableClasses().getEntities());
 
@@ -69,49 +77,49 @@ public class SimpleJaccardApp {
             sc.add(c);
             superClassCache.put(c,uPhenoClasses(sc));
         }
+        AncestorIndex index = new AncestorIndex(superClassCache);
+        superClassCache.clear();
 
         //int loops = 5000;
 
         long end_prepare_superclass_sets = System.currentTimeMillis();
-        long total = c1_classes.size() * c2_classes.size();
-
-        Set<Match> matches_threshold = new HashSet<>();
-
-        int i = 0;
-        for(String c1:c1_classes) {
-            if (i % 1000 == 0) {
-                System.out.println(i+" ("+((double)i/(double)total)+", "+matches_threshold.size()+" matches)");
-            }
-            i++;
-            for (String c2 : c2_classes) {
-                if(c1!=c2) {
-                    OWLClass l = cl(c1);
-                    OWLClass r = cl(c2);
-                    //log(l+" vs "+r);
-                    double jacc = computeJaccardSimilarity(superClassCache,l, r);
-                    if(jacc>cutoff) {
-                        Match match = new ClassMatch(l,r);
-                        match.setValue("jaccard",jacc);
-                        matches_threshold.add(match);
-                    }
-                }
-            }
+        List<OWLClass> c1_list = sortedClasses(c1_classes);
+        List<OWLClass> c2_list = sortedClasses(c2_classes);
+        log("Scoring "+c1_list.size()+" x "+c2_list.size()+" pairs on "+threads+" threads.");
+        InformationContent ic = informationContent(index);
+        SimilarityEngine engine = new SimilarityEngine(index, threads, ic);
+        MinHashLSH lsh = MinHashLSH.parse(index, lsh_config);
+        List<Match> matches_threshold;
+        if(lsh!=null) {
+            log("Scoring only LSH candidate pairs ("+lsh.getBands()+" bands x "+lsh.getRows()+" rows).");
+            matches_threshold = engine.candidatePairs(c1_list, c2_list, cutoff, top_k, lsh);
+            long total = (long)c1_list.size()*(long)c2_list.size();
+            log("Scored "+engine.getScoredPairs()+" of "+total+" pairs ("+((double)engine.getScoredPairs()/(double)total)+").");
+            log("LSH recall against exhaustive scoring (sample of "+Math.min(LSH_RECALL_SAMPLE,c1_list.size())+" c1 classes): "+engine.recall(c1_list, c2_list, cutoff, lsh, LSH_RECALL_SAMPLE));
+        } else if(top_k>0) {
+            log("Keeping the "+top_k+" best matches per c1 class.");
+            matches_threshold = engine.topK(c1_list, c2_list, cutoff, top_k);
+        } else {
+            matches_threshold = engine.allPairs(c1_list, c2_list, cutoff);
         }
 
         long sim_done = System.currentTimeMillis();
         log("");
         log("Total number of matches to above threshold: "+matches_threshold.size());
-        List<Map<String,String>> data = new ArrayList<>();
-        for(Match match:matches_threshold) {
-            Map<String,String> rec = new HashMap<>();
-            rec.put("c1",match.getLeftMatch().toString());
-            rec.put("c2",match.getRightMatch().toString());
-            rec.put("c1_label",ren.render(match.getLeftMatch()));
-            rec.put("c2_label",ren.render(match.getRightMatch()));
-            for(String s: match.getData().keySet()) {
-                rec.put(s, match.getData().get(s)+"");
+        List<String> columns = new ArrayList<>(Arrays.asList("c1","c2","c1_label","c2_label"));
+        columns.addAll(engine.getMetrics());
+        try(CSVWriter writer = CSVWriter.sortedColumns(data_file, columns)) {
+            for(Match match:matches_threshold) {
+                Map<String,String> rec = new HashMap<>();
+                rec.put("c1",match.getLeftMatch().toString());
+                rec.put("c2",match.getRightMatch().toString());
+                rec.put("c1_label",ren.render(match.getLeftMatch()));
+                rec.put("c2_label",ren.render(match.getRightMatch()));
+                for(String s: match.getData().keySet()) {
+                    rec.put(s, match.getData().get(s)+"");
+                }
+                writer.writeRecord(rec);
             }
-            data.add(rec);
         }
         long end = System.currentTimeMillis();
         log("Overall:" +(end-start)/1000+" sec");
@@ -119,22 +127,30 @@ public class SimpleJaccardApp {
         log("Prepare superclass sets:" +(end_prepare_superclass_sets-end_materialise)/1000+" sec");
         log("Similarity:" +(sim_done-end_prepare_superclass_sets)/1000+" sec");
         log("Data:" +(end-sim_done)/1000+" sec");
-
-        Export.writeCSV(data,data_file);
     }
 
-    private double computeJaccardSimilarity(Map<OWLClass,Set<OWLClass>> cache, OWLClassExpression c1, OWLClassExpression c2) {
-        if(! (cache.containsKey(c1) && cache.containsKey(c2))) {
-            return 0.0;
-        }
-        if(!cache.containsKey(c1)) {
-            return 0.0;
+    private InformationContent informationContent(AncestorIndex index) throws IOException {
+        if(ic_config.equals("ic")) {
+            log("Computing information content from descendant counts.");
+            return InformationContent.fromDescendantCounts(index);
+        } else if(ic_config.startsWith("ic:")) {
+            File annotation_file = new File(ic_config.substring(3));
+            log("Computing information content from annotation frequencies in "+annotation_file);
+            Map<OWLClass,Integer> annotations = new HashMap<>();
+            for(String iri:FileUtils.readLines(annotation_file, "utf-8")) {
+                if(!iri.trim().isEmpty()) {
+                    annotations.merge(cl(iri.trim()), 1, Integer::sum);
+                }
+            }
+            return InformationContent.fromAnnotationFrequency(index, annotations);
         }
-        Set<OWLClass> superClassesUnion = new HashSet<>(cache.get(c1));
-        Set<OWLClass> superClassesIntersection = new HashSet<>(cache.get(c1));
-        superClassesUnion.addAll(cache.get(c2));
-        superClassesIntersection.retainAll(cache.get(c2));
-        return (double)superClassesIntersection.size()/(double)superClassesUnion.size();
+        return null;
+    }
+
+    private List<OWLClass> sortedClasses(Set<String> iris) {
+        List<String> sorted = new ArrayList<>(iris);
+        Collections.sort(sorted);
+        return sorted.stream().map(this::cl).collect(Collectors.toList());
     }
 
     String TMPURL = Entities.OBOPURLSTRING + "UPHENOTMP_";
@@ -187,6 +203,14 @@ public class SimpleJaccardApp {
         String data_path_out = args[4];
         boolean materialise_has_phenotype_affecting = args[5].equals("materialise");
         double cutoff = Double.valueOf(args[6]);
+        int threads = args.length > 7 ? Integer.valueOf(args[7]) : Runtime.getRuntime().availableProcessors();
+        // 0: keep all matches above the cutoff, k>0: keep only the k best matches per c1 class
+        int top_k = args.length > 8 ? Integer.valueOf(args[8]) : 0;
+        // exhaustive: score all pairs, lsh:BANDS:ROWS: score only MinHash/LSH candidate pairs
+        String lsh_config = args.length > 9 ? args[9] : "exhaustive";
+        // jaccard: Jaccard only, ic: also Resnik, Lin and SimGIC with IC from descendant counts,
+        // ic:FILE: the same with IC from annotation frequencies (one annotated class IRI per line in FILE)
+        String ic_config = args.length > 10 ? args[10] : "jaccard";
 
 /*
         String ontology_path = "/Users/matentzn/ws/upheno-dev/src/curation/upheno-release/all/upheno_all_with_relations.owl";
@@ -199,7 +223,7 @@ public class SimpleJaccardApp {
         File c1_list_file = new File(c1_list);
         File c2_list_file = new File(c2_list);
         File data_file_out = new File(data_path_out);
-        new SimpleJaccardApp(ontology_file, c1_list_file, c2_list_file, root, data_file_out, materialise_has_phenotype_affecting, cutoff);
+        new SimpleJaccardApp(ontology_file, c1_list_file, c2_list_file, root, data_file_out, materialise_has_phenotype_affecting, cutoff, threads, top_k, lsh_config, ic_config);
     }
 
 }
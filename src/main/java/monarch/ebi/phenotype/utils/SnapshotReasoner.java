@@ -0,0 +1,362 @@
+package monarch.ebi.phenotype.utils;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNode;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+import org.semanticweb.owlapi.util.Version;
+
+import java.util.*;
+
+/**
+ * Read-only reasoner that answers class hierarchy queries from a {@link TaxonomySnapshot} instead of classifying
+ * the ontology. Only named classes are supported: sub- and superclasses (direct and indirect), equivalent classes,
+ * satisfiability and the unsatisfiable classes. Classes that are not part of the snapshot are treated as fresh
+ * entities, that is, they are only subsumed by owl:Thing. All other queries throw an UnsupportedOperationException.
+ * Changes to the ontology after the reasoner was created are not taken into account.
+ */
+public class SnapshotReasoner implements OWLReasoner {
+
+    private final OWLOntology o;
+    private final TaxonomySnapshot snapshot;
+    private final boolean consistent;
+    private final Map<OWLClass, Integer> node_of = new HashMap<>();
+    private final OWLClassNode[] nodes;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int top;
+    private final int bottom;
+
+    public SnapshotReasoner(OWLOntology o, TaxonomySnapshot snapshot) {
+        this.o = o;
+        this.snapshot = snapshot;
+        this.consistent = snapshot.isConsistent();
+        this.parents = snapshot.getParents();
+        this.top = snapshot.getTop();
+        this.bottom = snapshot.getBottom();
+        OWLClass[] classes = snapshot.getClasses();
+        int[][] members = snapshot.getMembers();
+        nodes = new OWLClassNode[members.length];
+        for (int n = 0; n < members.length; n++) {
+            Set<OWLClass> node = new HashSet<>();
+            for (int c : members[n]) {
+                node.add(classes[c]);
+                node_of.put(classes[c], n);
+            }
+            nodes[n] = new OWLClassNode(node);
+        }
+        int[] ct_children = new int[nodes.length];
+        for (int[] p : parents) {
+            for (int n : p) {
+                ct_children[n]++;
+            }
+        }
+        children = new int[nodes.length][];
+        for (int n = 0; n < nodes.length; n++) {
+            children[n] = new int[ct_children[n]];
+            ct_children[n] = 0;
+        }
+        for (int n = 0; n < nodes.length; n++) {
+            for (int p : parents[n]) {
+                children[p][ct_children[p]++] = n;
+            }
+        }
+    }
+
+    private int node(OWLClassExpression ce) {
+        if (ce.isAnonymous()) {
+            throw new UnsupportedOperationException("Taxonomy snapshots only answer queries over named classes: " + ce);
+        }
+        Integer n = node_of.get(ce.asOWLClass());
+        return n == null ? -1 : n;
+    }
+
+    private NodeSet<OWLClass> related(int n, int[][] adjacency, boolean direct) {
+        OWLClassNodeSet related = new OWLClassNodeSet();
+        if (direct) {
+            for (int r : adjacency[n]) {
+                related.addNode(nodes[r]);
+            }
+            return related;
+        }
+        BitSet visited = new BitSet(nodes.length);
+        Deque<Integer> open = new ArrayDeque<>();
+        open.push(n);
+        while (!open.isEmpty()) {
+            for (int r : adjacency[open.pop()]) {
+                if (!visited.get(r)) {
+                    visited.set(r);
+                    related.addNode(nodes[r]);
+                    open.push(r);
+                }
+            }
+        }
+        return related;
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        int n = node(ce);
+        if (n < 0) {
+            return new OWLClassNodeSet(nodes[top]);
+        }
+        return related(n, parents, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        int n = node(ce);
+        if (n < 0) {
+            return new OWLClassNodeSet(nodes[bottom]);
+        }
+        return related(n, children, direct);
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        int n = node(ce);
+        return n < 0 ? new OWLClassNode(ce.asOWLClass()) : nodes[n];
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression ce) {
+        return node(ce) != bottom;
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        return nodes[bottom];
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        return nodes[top];
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        return nodes[bottom];
+    }
+
+    @Override
+    public boolean isConsistent() {
+        return consistent;
+    }
+
+    /**
+     * @return the snapshot the reasoner answers from.
+     */
+    public TaxonomySnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public OWLOntology getRootOntology() {
+        return o;
+    }
+
+    @Override
+    public String getReasonerName() {
+        return "TaxonomySnapshot";
+    }
+
+    @Override
+    public Version getReasonerVersion() {
+        return new Version(1, 0, 0, 0);
+    }
+
+    @Override
+    public BufferingMode getBufferingMode() {
+        return BufferingMode.BUFFERING;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public List<OWLOntologyChange> getPendingChanges() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomAdditions() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomRemovals() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void interrupt() {
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+    }
+
+    @Override
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return inferenceType == InferenceType.CLASS_HIERARCHY;
+    }
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        return Collections.singleton(InferenceType.CLASS_HIERARCHY);
+    }
+
+    @Override
+    public long getTimeOut() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public FreshEntityPolicy getFreshEntityPolicy() {
+        return FreshEntityPolicy.ALLOW;
+    }
+
+    @Override
+    public IndividualNodeSetPolicy getIndividualNodeSetPolicy() {
+        return IndividualNodeSetPolicy.BY_NAME;
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("Taxonomy snapshots only answer class hierarchy queries.");
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        throw unsupported();
+    }
+
+    @Override
+    public boolean isEntailmentCheckingSupported(AxiomType<?> axiomType) {
+        return false;
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        throw unsupported();
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        throw unsupported();
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        throw unsupported();
+    }
+}
@@ -0,0 +1,252 @@
+package monarch.ebi.phenotype.utils;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.semanticweb.elk.owlapi.ElkReasonerFactory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The inferred class hierarchy of an ontology: the equivalence classes (nodes), the direct parents of every node,
+ * and the unsatisfiable classes (the members of the bottom node). A snapshot can be saved to a compact binary
+ * file keyed by the content hash of the ontology, and loaded again on the next run instead of reclassifying.
+ *
+ * Apps obtain their reasoner through {@link #createReasoner(OWLOntology)}. If the system property
+ * phenotype.utils.taxonomy.cache is set to a directory, the taxonomy is loaded from there if a snapshot for the
+ * same ontology content exists, and classified with ELK and stored there otherwise. The returned reasoner only
+ * answers hierarchy queries over named classes, see {@link SnapshotReasoner}. Without the property, a plain
+ * ELK reasoner is returned.
+ */
+public class TaxonomySnapshot {
+
+    public static final String CACHE_PROPERTY = "phenotype.utils.taxonomy.cache";
+    private static final int MAGIC = 0x54584f4e;
+    private static final int VERSION = 1;
+    private static final OWLDataFactory df = OWLManager.getOWLDataFactory();
+
+    private final String hash;
+    private final boolean consistent;
+    private final OWLClass[] classes;
+    private final int[][] members;
+    private final int[][] parents;
+    private final int top;
+    private final int bottom;
+
+    private TaxonomySnapshot(String hash, boolean consistent, OWLClass[] classes, int[][] members, int[][] parents, int top, int bottom) {
+        this.hash = hash;
+        this.consistent = consistent;
+        this.classes = classes;
+        this.members = members;
+        this.parents = parents;
+        this.top = top;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @return a reasoner for the ontology, backed by a taxonomy snapshot if a cache directory is configured.
+     */
+    public static OWLReasoner createReasoner(OWLOntology o) {
+        String cache = System.getProperty(CACHE_PROPERTY);
+        if (cache == null || cache.isEmpty()) {
+            return new ElkReasonerFactory().createReasoner(o);
+        }
+        String hash = contentHash(o);
+        File snapshot_file = new File(cache, "taxonomy-" + hash + ".bin");
+        if (snapshot_file.isFile()) {
+            try {
+                log("Loading taxonomy snapshot " + snapshot_file);
+                return new SnapshotReasoner(o, load(snapshot_file));
+            } catch (IOException e) {
+                log("Taxonomy snapshot " + snapshot_file + " could not be loaded, reclassifying: " + e.getMessage());
+            }
+        }
+        OWLReasoner elk = new ElkReasonerFactory().createReasoner(o);
+        TaxonomySnapshot snapshot = fromReasoner(elk, hash);
+        elk.dispose();
+        try {
+            snapshot_file.getParentFile().mkdirs();
+            snapshot.save(snapshot_file);
+            log("Saved taxonomy snapshot " + snapshot_file);
+        } catch (IOException e) {
+            log("Taxonomy snapshot " + snapshot_file + " could not be saved: " + e.getMessage());
+        }
+        return new SnapshotReasoner(o, snapshot);
+    }
+
+    /**
+     * @return the snapshot a SnapshotReasoner answers from, or else a new snapshot of the class hierarchy of the
+     * reasoner, so that a hierarchy is never walked twice.
+     */
+    public static TaxonomySnapshot of(OWLReasoner r) {
+        if (r instanceof SnapshotReasoner) {
+            return ((SnapshotReasoner) r).getSnapshot();
+        }
+        return fromReasoner(r, "");
+    }
+
+    /**
+     * Hash over the logical axioms and declarations of the imports closure. The hashes of the individual axioms
+     * are summed up, so the result does not depend on the order in which the axioms are stored.
+     */
+    public static String contentHash(OWLOntology o) {
+        long h1 = 0;
+        long h2 = 0;
+        long ct = 0;
+        for (OWLOntology i : o.getImportsClosure()) {
+            for (OWLAxiom ax : i.getAxioms()) {
+                if (ax.isLogicalAxiom() || ax instanceof OWLDeclarationAxiom) {
+                    ByteBuffer b = ByteBuffer.wrap(Hashing.murmur3_128().hashString(ax.toString(), StandardCharsets.UTF_8).asBytes());
+                    h1 += b.getLong();
+                    h2 += b.getLong();
+                    ct++;
+                }
+            }
+        }
+        ByteBuffer b = ByteBuffer.allocate(24).putLong(h1).putLong(h2).putLong(ct);
+        return HashCode.fromBytes(b.array()).toString();
+    }
+
+    public static TaxonomySnapshot fromReasoner(OWLReasoner r, String hash) {
+        Set<OWLClass> signature = new HashSet<>(r.getRootOntology().getClassesInSignature(Imports.INCLUDED));
+        signature.add(df.getOWLThing());
+        signature.add(df.getOWLNothing());
+        List<OWLClass> sorted = new ArrayList<>(signature);
+        sorted.sort(Comparator.comparing(c -> c.getIRI().toString()));
+        OWLClass[] classes = sorted.toArray(new OWLClass[0]);
+        Map<OWLClass, Integer> class_ids = new HashMap<>();
+        for (int i = 0; i < classes.length; i++) {
+            class_ids.put(classes[i], i);
+        }
+
+        Map<Node<OWLClass>, Integer> node_ids = new HashMap<>();
+        List<Node<OWLClass>> nodes = new ArrayList<>();
+        for (OWLClass c : classes) {
+            Node<OWLClass> n = r.getEquivalentClasses(c);
+            if (!node_ids.containsKey(n)) {
+                node_ids.put(n, nodes.size());
+                nodes.add(n);
+            }
+        }
+        int top = node_ids.get(r.getEquivalentClasses(df.getOWLThing()));
+        int bottom = node_ids.get(r.getEquivalentClasses(df.getOWLNothing()));
+        int[][] members = new int[nodes.size()][];
+        int[][] parents = new int[nodes.size()][];
+        BitSet has_children = new BitSet(nodes.size());
+        for (int n = 0; n < nodes.size(); n++) {
+            members[n] = nodes.get(n).getEntities().stream().filter(class_ids::containsKey).mapToInt(class_ids::get).sorted().toArray();
+            if (n == bottom) {
+                continue;
+            }
+            OWLClass representative = nodes.get(n).getRepresentativeElement();
+            parents[n] = r.getSuperClasses(representative, true).getNodes().stream().filter(node_ids::containsKey).mapToInt(node_ids::get).sorted().toArray();
+            for (int p : parents[n]) {
+                has_children.set(p);
+            }
+        }
+        // The bottom node sits directly below all leaves, so that it is part of the (indirect) subclasses of every node.
+        parents[bottom] = IntStream.range(0, nodes.size()).filter(n -> n != bottom && !has_children.get(n)).toArray();
+        return new TaxonomySnapshot(hash, r.isConsistent(), classes, members, parents, top, bottom);
+    }
+
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(hash);
+            out.writeBoolean(consistent);
+            out.writeInt(classes.length);
+            for (OWLClass c : classes) {
+                out.writeUTF(c.getIRI().toString());
+            }
+            out.writeInt(members.length);
+            for (int n = 0; n < members.length; n++) {
+                writeInts(out, members[n]);
+                writeInts(out, parents[n]);
+            }
+            out.writeInt(top);
+            out.writeInt(bottom);
+        }
+    }
+
+    public static TaxonomySnapshot load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a taxonomy snapshot of version " + VERSION + ": " + file);
+            }
+            String hash = in.readUTF();
+            boolean consistent = in.readBoolean();
+            OWLClass[] classes = new OWLClass[in.readInt()];
+            for (int i = 0; i < classes.length; i++) {
+                classes[i] = df.getOWLClass(IRI.create(in.readUTF()));
+            }
+            int ct_nodes = in.readInt();
+            int[][] members = new int[ct_nodes][];
+            int[][] parents = new int[ct_nodes][];
+            for (int n = 0; n < ct_nodes; n++) {
+                members[n] = readInts(in);
+                parents[n] = readInts(in);
+            }
+            int top = in.readInt();
+            int bottom = in.readInt();
+            return new TaxonomySnapshot(hash, consistent, classes, members, parents, top, bottom);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void log(Object o) {
+        System.out.println(o.toString());
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    boolean isConsistent() {
+        return consistent;
+    }
+
+    OWLClass[] getClasses() {
+        return classes;
+    }
+
+    int[][] getMembers() {
+        return members;
+    }
+
+    int[][] getParents() {
+        return parents;
+    }
+
+    int getTop() {
+        return top;
+    }
+
+    int getBottom() {
+        return bottom;
+    }
+}
@@ -5,7 +5,20 @@ import org.semanticweb.owlapi.model.OWLClassExpression;
 
 import java.util.Map;
 
+/**
+ * A modelling error in the EQ definition of a phenotype. Evaluating a phenotype has no side effects on the violation,
+ * so phenotypes can be evaluated in any order, and by any number of threads at once.
+ */
 public interface EQViolation {
-    Map<String,String> report(OWLClassExpression p);
-    boolean violatedBy(OWLClassExpression p);
+
+    /**
+     * @param p  the phenotype
+     * @param eq the EQ definition of the phenotype, that is, an anonymous class expression equivalent to it
+     * @return an unmodifiable map from violation category to message, empty if the phenotype does not violate it.
+     */
+    Map<String,String> evaluate(OWLClass p, OWLClassExpression eq);
+
+    default boolean violatedBy(OWLClass p, OWLClassExpression eq) {
+        return !evaluate(p, eq).isEmpty();
+    }
 }
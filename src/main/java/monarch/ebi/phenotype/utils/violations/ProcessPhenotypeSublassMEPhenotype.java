@@ -3,7 +3,6 @@ package monarch.ebi.phenotype.utils.violations;
 import monarch.ebi.phenotype.utils.Entities;
 import monarch.ebi.phenotype.utils.OntologyUtils;
 import monarch.ebi.phenotype.utils.RenderManager;
-import org.semanticweb.elk.util.collections.FList;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.OWLClass;
 import org.semanticweb.owlapi.model.OWLClassExpression;
@@ -11,80 +10,96 @@ import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Process phenotypes that are superclasses of material entity phenotypes, and the other way around. The named
+ * subclasses of each kind of phenotype, and of the bearer of each kind, are computed up front with the reasoner.
+ * Phenotypes are then evaluated against the read-only view of the class hierarchy, which may be shared by any number
+ * of threads. Only definitions whose bearer is not a named class still need the reasoner, and queries to it are
+ * serialised on the reasoner.
+ */
 public class ProcessPhenotypeSublassMEPhenotype implements EQViolation {
 
-    private OWLReasoner elk;
-    private OWLDataFactory df = OWLManager.getOWLDataFactory();
-    private Map<OWLClassExpression, Map<String,String>> reports = new HashMap<>();
+    private static final List<OWLClassExpression> KINDS = Arrays.asList(Entities.materialEntityPhenotype, Entities.processPhenotype, Entities.developmentalPhenotype, Entities.homeostatisPhenotype, Entities.pigmentationPhenotype);
 
-    public ProcessPhenotypeSublassMEPhenotype(OWLReasoner elk, Set<OWLClass> phenotypes) {
+    private final OWLReasoner elk;
+    private final OWLReasoner view;
+    private OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private final Map<OWLClassExpression, Set<OWLClass>> phenotypes_of_kind = new HashMap<>();
+    private final Map<OWLClassExpression, Set<OWLClass>> bearers_of_kind = new HashMap<>();
+
+    /**
+     * @param elk  the reasoner over the ontology
+     * @param view a read-only reasoner over the class hierarchy of the same ontology, for example a SnapshotReasoner
+     */
+    public ProcessPhenotypeSublassMEPhenotype(OWLReasoner elk, OWLReasoner view) {
         this.elk = elk;
-}
-
-    @Override
-    public Map<String,String> report(OWLClassExpression c) {
-        if(reports.containsKey(c)) {
-            return reports.get(c);
+        this.view = view;
+        Set<OWLClass> unsatisfiable = elk.getUnsatisfiableClasses().getEntities();
+        for(OWLClassExpression kind:KINDS) {
+            Set<OWLClass> phenotypes = new HashSet<>(elk.getSubClasses(kind, false).getFlattened());
+            phenotypes.addAll(elk.getEquivalentClasses(kind).getEntities());
+            phenotypes.addAll(unsatisfiable);
+            phenotypes_of_kind.put(kind, phenotypes);
+            OWLClassExpression bearer = OntologyUtils.extractBearerFromEQ(kind);
+            if(bearer!=null && !bearer.isAnonymous()) {
+                Set<OWLClass> bearers = new HashSet<>(elk.getSubClasses(bearer, false).getFlattened());
+                bearers.addAll(elk.getEquivalentClasses(bearer).getEntities());
+                bearers.addAll(unsatisfiable);
+                bearers_of_kind.put(kind, bearers);
+            }
         }
-        return new HashMap<>();
     }
 
     @Override
-    public boolean violatedBy(OWLClassExpression p) {
-        String ps = RenderManager.getInstance().render(p);
-        boolean violates = false;
-        if(!elk.isSatisfiable(p)) {
-            return violates;
+    public Map<String,String> evaluate(OWLClass phenotype, OWLClassExpression p) {
+        Map<String,String> violations = new HashMap<>();
+        if(!view.isSatisfiable(phenotype)) {
+            return Collections.emptyMap();
         }
         if(isProcessPhenotype(p) && !isMEPhenotype(p)) {
-            for(OWLClass sub: getSubs(p, elk, true)) {
-                OWLClassExpression eqsub = OntologyUtils.getEQ(elk.getRootOntology(),sub);
+            for(OWLClass sub: getSubs(phenotype, true)) {
+                OWLClassExpression eqsub = OntologyUtils.getEQ(view.getRootOntology(),sub);
                 if(eqsub!=null) {
-                    if (isMEPhenotype(sub) && elk.isSatisfiable(sub) && !isProcessPhenotype(eqsub)) {
+                    if (isMEPhenotype(sub) && view.isSatisfiable(sub) && !isProcessPhenotype(eqsub)) {
                         String msg = String.format("(%s) is process phenotype and superclass of anatomy phenotype %s (%s) \n", RenderManager.getInstance().render(p), RenderManager.getInstance().render(sub), RenderManager.getInstance().render(eqsub));
 
                         if(isDevelopmentPhenotype(sub)) {
-                            addViolation(p, "super_developmental_sub_me", msg);
+                            addViolation(violations, "super_developmental_sub_me", msg);
                         } else if(isHomeostaticPhenotype(sub)) {
-                            addViolation(p, "super_homeostatic_sub_me", msg);
+                            addViolation(violations, "super_homeostatic_sub_me", msg);
                         } else if(isPigmentationPhenotype(sub)) {
-                            addViolation(p, "super_pigmentation_sub_me", msg);
+                            addViolation(violations, "super_pigmentation_sub_me", msg);
                         } else {
-                            addViolation(p,"super_process_sub_me",msg);
+                            addViolation(violations, "super_process_sub_me",msg);
                         }
-                        violates = true;
                         //System.out.println(msg);
                     }
                 }
             }
         }
         if(isMEPhenotype(p) && !isProcessPhenotype(p)) {
-            for(OWLClass sub: getSubs(p, elk, true)) {
-                OWLClassExpression eqsub = OntologyUtils.getEQ(elk.getRootOntology(),sub);
+            for(OWLClass sub: getSubs(phenotype, true)) {
+                OWLClassExpression eqsub = OntologyUtils.getEQ(view.getRootOntology(),sub);
                 if(eqsub!=null) {
-                    if (isProcessPhenotype(sub) && elk.isSatisfiable(sub) && !isMEPhenotype(eqsub)) {
+                    if (isProcessPhenotype(sub) && view.isSatisfiable(sub) && !isMEPhenotype(eqsub)) {
                         String msg = String.format("(%s) is anatomy phenotype and superclass of process phenotype %s (%s) \n", RenderManager.getInstance().render(p), RenderManager.getInstance().render(sub), RenderManager.getInstance().render(eqsub));
                         if(isDevelopmentPhenotype(sub)) {
-                            addViolation(p, "super_me_sub_development", msg);
+                            addViolation(violations, "super_me_sub_development", msg);
                         } else if(isHomeostaticPhenotype(sub)) {
-                            addViolation(p, "super_me_sub_homeostatic", msg);
+                            addViolation(violations, "super_me_sub_homeostatic", msg);
                         } else if(isPigmentationPhenotype(sub)) {
-                            addViolation(p, "super_me_sub_pigmentation", msg);
+                            addViolation(violations, "super_me_sub_pigmentation", msg);
                         } else {
-                            addViolation(p, "super_me_sub_process", msg);
+                            addViolation(violations, "super_me_sub_process", msg);
                         }
-                        violates = true;
                         //System.out.println(msg);
                     }
                 }
             }
         }
-        return violates;
+        return Collections.unmodifiableMap(violations);
     }
 
     private boolean isDevelopmentPhenotype(OWLClass sub) {
@@ -99,15 +114,12 @@ public class ProcessPhenotypeSublassMEPhenotype implements EQViolation {
         return isXPhenotype(sub,Entities.pigmentationPhenotype);
     }
 
-    private void addViolation(OWLClassExpression p, String cat, String msg) {
-        if(!reports.containsKey(p)) {
-            reports.put(p, new HashMap<>());
-        }
-        reports.get(p).put(cat,msg);
+    private void addViolation(Map<String,String> violations, String cat, String msg) {
+        violations.put(cat,msg);
     }
 
-    private Set<OWLClass> getSubs(OWLClassExpression p, OWLReasoner elk, boolean b) {
-        Set<OWLClass> subs = new HashSet<>(elk.getSubClasses(p, b).getFlattened());
+    private Set<OWLClass> getSubs(OWLClass p, boolean b) {
+        Set<OWLClass> subs = new HashSet<>(view.getSubClasses(p, b).getFlattened());
         return subs;
     }
 
@@ -120,17 +132,20 @@ public class ProcessPhenotypeSublassMEPhenotype implements EQViolation {
     }
 
     private boolean isXPhenotype(OWLClassExpression p, OWLClassExpression xPhenotype) {
-        OWLSubClassOfAxiom sbcl;
-        if(p.isClassExpressionLiteral()) {
-            sbcl = df.getOWLSubClassOfAxiom(p,xPhenotype);
-        } else {
-            OWLClassExpression bearerIn = OntologyUtils.extractBearerFromEQ(p);
-            OWLClassExpression bearerX = OntologyUtils.extractBearerFromEQ(xPhenotype);
-            if(bearerIn==null) {
-                return false;
-            }
-            sbcl = df.getOWLSubClassOfAxiom(bearerIn, bearerX);
+        if(!p.isAnonymous()) {
+            return phenotypes_of_kind.get(xPhenotype).contains(p.asOWLClass());
+        }
+        OWLClassExpression bearerIn = OntologyUtils.extractBearerFromEQ(p);
+        if(bearerIn==null) {
+            return false;
+        }
+        if(!bearerIn.isAnonymous() && bearers_of_kind.containsKey(xPhenotype)) {
+            return bearers_of_kind.get(xPhenotype).contains(bearerIn.asOWLClass());
+        }
+        OWLClassExpression bearerX = OntologyUtils.extractBearerFromEQ(xPhenotype);
+        OWLSubClassOfAxiom sbcl = df.getOWLSubClassOfAxiom(bearerIn, bearerX);
+        synchronized (elk) {
+            return elk.isEntailed(sbcl);
         }
-        return elk.isEntailed(sbcl);
     }
 }
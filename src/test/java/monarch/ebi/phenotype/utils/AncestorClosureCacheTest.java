@@ -0,0 +1,80 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class AncestorClosureCacheTest extends TestCase {
+
+    private final OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private final OWLClass a = cl("A");
+    private final OWLClass b = cl("B");
+    private final OWLClass c = cl("C");
+    private OWLReasoner r;
+
+    private OWLClass cl(String name) {
+        return df.getOWLClass(IRI.create("http://example.org/" + name));
+    }
+
+    @Override
+    protected void setUp() throws OWLOntologyCreationException {
+        OWLOntologyManager man = OWLManager.createOWLOntologyManager();
+        OWLOntology o = man.createOntology();
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(a, b));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(b, c));
+        r = new StructuralReasonerFactory().createReasoner(o);
+    }
+
+    private void assertCounts(AncestorClosureCache cache, long hits, long misses, long evictions, int size) {
+        assertEquals(hits, cache.getHits());
+        assertEquals(misses, cache.getMisses());
+        assertEquals(evictions, cache.getEvictions());
+        assertEquals(size, cache.size());
+    }
+
+    public void testSuperClasses() {
+        AncestorClosureCache cache = new AncestorClosureCache(r, 2);
+        Set<OWLClass> expected = new HashSet<>(Arrays.asList(b, c, df.getOWLThing()));
+        assertEquals(expected, cache.getSuperClasses(a));
+        assertEquals(expected, cache.getSuperClasses(a));
+        try {
+            cache.getSuperClasses(a).add(a);
+            fail("Modified a cached set of superclasses");
+        } catch (UnsupportedOperationException expected_exception) {
+        }
+    }
+
+    public void testLeastRecentlyUsedClassIsEvicted() {
+        AncestorClosureCache cache = new AncestorClosureCache(r, 2);
+        cache.getSuperClasses(a);
+        cache.getSuperClasses(b);
+        assertCounts(cache, 0, 2, 0, 2);
+        // A is now more recently used than B, so C evicts B.
+        cache.getSuperClasses(a);
+        cache.getSuperClasses(c);
+        assertCounts(cache, 1, 3, 1, 2);
+        cache.getSuperClasses(a);
+        assertCounts(cache, 2, 3, 1, 2);
+        cache.getSuperClasses(b);
+        assertCounts(cache, 2, 4, 2, 2);
+        // C was evicted by B, while A was used last before B.
+        cache.getSuperClasses(a);
+        assertCounts(cache, 3, 4, 2, 2);
+        cache.getSuperClasses(c);
+        assertCounts(cache, 3, 5, 3, 2);
+    }
+
+    public void testSizeMustBePositive() {
+        try {
+            new AncestorClosureCache(r, 0);
+            fail("Created a cache without room for any class");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
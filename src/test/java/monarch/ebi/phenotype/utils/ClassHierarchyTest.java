@@ -0,0 +1,94 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.structural.StructuralReasonerFactory;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class ClassHierarchyTest extends TestCase {
+
+    private final OWLDataFactory df = OWLManager.getOWLDataFactory();
+    private final OWLClass a = cl("A");
+    private final OWLClass b = cl("B");
+    private final OWLClass b2 = cl("B2");
+    private final OWLClass x = cl("X");
+    private final OWLClass c = cl("C");
+    private final OWLClass d = cl("D");
+    private final OWLClass e = cl("E");
+    private ClassHierarchy h;
+
+    private OWLClass cl(String name) {
+        return df.getOWLClass(IRI.create("http://example.org/" + name));
+    }
+
+    /*
+    A is below B (equivalent to B2) and X, which are both below C. C is below D and E, which are below owl:Thing.
+     */
+    @Override
+    protected void setUp() throws OWLOntologyCreationException {
+        OWLOntologyManager man = OWLManager.createOWLOntologyManager();
+        OWLOntology o = man.createOntology();
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(a, b));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(a, x));
+        man.addAxiom(o, df.getOWLEquivalentClassesAxiom(b, b2));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(b, c));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(x, c));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(c, d));
+        man.addAxiom(o, df.getOWLSubClassOfAxiom(c, e));
+        h = ClassHierarchy.fromReasoner(new StructuralReasonerFactory().createReasoner(o));
+    }
+
+    private static Set<OWLClass> set(OWLClass... classes) {
+        return new HashSet<>(Arrays.asList(classes));
+    }
+
+    public void testDepthZero() {
+        assertEquals(set(), h.getSuperClasses(a, 0));
+        assertEquals(0, h.getSuperClasses(h.id(a), 0).length);
+    }
+
+    public void testDepthOne() {
+        assertEquals(set(b, b2, x), h.getSuperClasses(a, 1));
+    }
+
+    public void testDepthTwo() {
+        assertEquals(set(b, b2, x, c), h.getSuperClasses(a, 2));
+    }
+
+    public void testDepthThree() {
+        assertEquals(set(b, b2, x, c, d, e), h.getSuperClasses(a, 3));
+        assertEquals(set(b, b2, x, c, d, e, df.getOWLThing()), h.getSuperClasses(a, 4));
+    }
+
+    public void testNodesReachedTwiceAreVisitedOnce() {
+        int[] superclasses = h.getSuperClasses(h.id(a), 10);
+        assertEquals(7, superclasses.length);
+        assertEquals(7, Arrays.stream(superclasses).distinct().count());
+    }
+
+    public void testEquivalentClasses() {
+        assertEquals(set(c), h.getSuperClasses(b, 1));
+        assertEquals(set(c), h.getSuperClasses(b2, 1));
+        assertEquals(h.getSuperClasses(b, 3), h.getSuperClasses(b2, 3));
+    }
+
+    public void testRepeatedSearches() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(set(b, b2, x, c), h.getSuperClasses(a, 2));
+            assertEquals(set(d, e), h.getSuperClasses(c, 1));
+        }
+    }
+
+    public void testClassOutsideTheHierarchy() {
+        OWLClass fresh = cl("Fresh");
+        assertEquals(-1, h.id(fresh));
+        assertEquals(set(), h.getSuperClasses(fresh, 0));
+        assertEquals(set(df.getOWLThing()), h.getSuperClasses(fresh, 1));
+        assertEquals(set(df.getOWLThing()), h.getSuperClasses(fresh, 3));
+        assertFalse(h.isUnsatisfiable(fresh));
+    }
+}
@@ -0,0 +1,72 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+
+public class IntRowSetTest extends TestCase {
+
+    public void testAddAndContains() {
+        IntRowSet set = new IntRowSet(3);
+        assertTrue(set.add(new int[]{1, 2, 3}));
+        assertFalse(set.add(new int[]{1, 2, 3}));
+        assertTrue(set.add(new int[]{3, 2, 1}));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(new int[]{1, 2, 3}));
+        assertTrue(set.contains(new int[]{3, 2, 1}));
+        assertFalse(set.contains(new int[]{1, 2, 4}));
+    }
+
+    public void testRowsAreCopied() {
+        IntRowSet set = new IntRowSet(2);
+        int[] row = {1, 2};
+        set.add(row);
+        row[1] = 3;
+        assertTrue(set.contains(new int[]{1, 2}));
+        assertFalse(set.contains(row));
+    }
+
+    public void testRehash() {
+        IntRowSet set = new IntRowSet(2, 1);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.add(new int[]{i, i + 1}));
+        }
+        assertEquals(10000, set.size());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(set.contains(new int[]{i, i + 1}));
+            assertFalse(set.add(new int[]{i, i + 1}));
+        }
+        assertFalse(set.contains(new int[]{10000, 10001}));
+        assertEquals(10000, set.size());
+    }
+
+    public void testHashCollisions() {
+        // Arrays.hashCode is 31 * (31 + a) + b for a row {a, b}, so all of these rows have the same hash.
+        IntRowSet set = new IntRowSet(2);
+        for (int a = 0; a < 100; a++) {
+            assertTrue(set.add(new int[]{a, 3100 - 31 * a}));
+        }
+        assertEquals(100, set.size());
+        for (int a = 0; a < 100; a++) {
+            assertTrue(set.contains(new int[]{a, 3100 - 31 * a}));
+        }
+        assertFalse(set.contains(new int[]{100, 0}));
+        assertFalse(set.add(new int[]{42, 3100 - 31 * 42}));
+    }
+
+    public void testWidthMismatch() {
+        IntRowSet set = new IntRowSet(2);
+        assertFalse(set.contains(new int[]{1}));
+        try {
+            set.add(new int[]{1, 2, 3});
+            fail("Added a row of the wrong width");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testEmptyRows() {
+        IntRowSet set = new IntRowSet(0);
+        assertFalse(set.contains(new int[0]));
+        assertTrue(set.add(new int[0]));
+        assertFalse(set.add(new int[0]));
+        assertEquals(1, set.size());
+    }
+}
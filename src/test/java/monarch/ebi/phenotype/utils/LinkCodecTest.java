@@ -0,0 +1,149 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.Iterator;
+
+public class LinkCodecTest extends TestCase {
+
+    private static final long MAX_ENTITY = (1L << LinkCodec.ENTITY_BITS) - 1;
+    private static final long MAX_RELATION = (1L << LinkCodec.RELATION_BITS) - 1;
+
+    private static LinkBetweenEntity link(String e1, String e2, String p) {
+        return new LinkBetweenEntity(IRI.create("http://x/" + e1), IRI.create("http://x/" + e2), IRI.create("http://x/" + p));
+    }
+
+    public void testPackingNeverSetsTheSignBit() {
+        assertTrue(LinkCodec.pack(MAX_ENTITY, MAX_ENTITY, MAX_RELATION) > 0);
+        assertEquals(Long.MAX_VALUE >>> 1, LinkCodec.pack(MAX_ENTITY, MAX_ENTITY, MAX_RELATION));
+    }
+
+    public void testPackingOrdersByFirstEntitySecondEntityRelation() {
+        assertTrue(LinkCodec.pack(MAX_ENTITY, 0, 0) > LinkCodec.pack(MAX_ENTITY - 1, MAX_ENTITY, MAX_RELATION));
+        assertTrue(LinkCodec.pack(0, MAX_ENTITY, 0) > LinkCodec.pack(0, MAX_ENTITY - 1, MAX_RELATION));
+        assertTrue(LinkCodec.pack(0, 0, MAX_RELATION) > LinkCodec.pack(0, 0, MAX_RELATION - 1));
+    }
+
+    public void testEncodeDecodeRoundTrip() {
+        LinkCodec codec = new LinkCodec();
+        LinkBetweenEntity l = link("a", "b", "p");
+        long packed = codec.encode(l);
+        assertEquals(packed, codec.encode(l));
+        assertEquals(packed, codec.lookup(l));
+        assertEquals(l, codec.decode(packed));
+    }
+
+    public void testLookupOfUnknownLink() {
+        LinkCodec codec = new LinkCodec();
+        codec.encode(link("a", "b", "p"));
+        assertEquals(-1, codec.lookup(link("a", "c", "p")));
+        assertEquals(-1, codec.lookup(link("a", "b", "q")));
+    }
+
+    public void testFrozenCodec() {
+        LinkCodec codec = new LinkCodec();
+        LinkBetweenEntity l = link("a", "b", "p");
+        long packed = codec.encode(l);
+        codec.freeze();
+        assertEquals(packed, codec.lookup(l));
+        assertEquals(l, codec.decode(packed));
+        try {
+            codec.encode(link("a", "c", "p"));
+            fail("Encoded a link with a frozen codec");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testRelationLimit() {
+        LinkCodec codec = new LinkCodec();
+        long last = -1;
+        for (int i = 0; i <= MAX_RELATION; i++) {
+            last = codec.encode(link("a", "b", "p" + i));
+        }
+        assertEquals(MAX_RELATION, last & MAX_RELATION);
+        assertEquals(link("a", "b", "p" + MAX_RELATION), codec.decode(last));
+        try {
+            codec.encode(link("a", "b", "overflow"));
+            fail("Interned more than 2^" + LinkCodec.RELATION_BITS + " relations");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testLinkSetAtRelationLimit() {
+        LinkCodec codec = new LinkCodec();
+        LinkSet.Builder b = new LinkSet.Builder(codec);
+        for (int i = 0; i <= MAX_RELATION; i++) {
+            b.add(link("a", "b", "p" + i));
+        }
+        LinkSet set = b.build();
+        assertEquals(MAX_RELATION + 1, set.size());
+        assertTrue(set.contains(link("a", "b", "p" + MAX_RELATION)));
+        assertFalse(set.contains(link("b", "a", "p0")));
+    }
+
+    public void testLinkSetOperations() {
+        LinkCodec codec = new LinkCodec();
+        LinkSet s1 = new LinkSet.Builder(codec).add(link("a", "b", "p")).add(link("b", "c", "p")).add(link("a", "b", "p")).build();
+        LinkSet s2 = new LinkSet.Builder(codec).add(link("b", "c", "p")).add(link("c", "d", "p")).build();
+        assertEquals(2, s1.size());
+        assertEquals(3, s1.union(s2).size());
+        assertEquals(1, s1.intersection(s2).size());
+        assertTrue(s1.intersection(s2).contains(link("b", "c", "p")));
+        LinkSet d = s1.difference(s2);
+        assertEquals(1, d.size());
+        Iterator<LinkBetweenEntity> it = d.iterator();
+        assertEquals(link("a", "b", "p"), it.next());
+        assertFalse(it.hasNext());
+    }
+
+    public void testLinkBetweenPair() {
+        LinkCodec codec = new LinkCodec();
+        LinkSet set = new LinkSet.Builder(codec).add(link("a", "b", "q")).add(link("a", "b", "p"))
+                .add(link("b", "c", "p")).build();
+        long ab = codec.lookup(link("a", "b", "q"));
+        long bc = codec.encode(link("b", "c", "q"));
+        long ca = codec.encode(link("c", "a", "p"));
+        assertEquals(ab, set.getLinkBetween(codec.lookup(link("a", "b", "p"))));
+        assertEquals(codec.lookup(link("b", "c", "p")), set.getLinkBetween(bc));
+        assertEquals(-1, set.getLinkBetween(ca));
+    }
+
+    public void testPairCounts() {
+        LinkCodec codec = new LinkCodec();
+        LinkSet s1 = new LinkSet.Builder(codec).add(link("a", "b", "p")).add(link("a", "b", "q")).add(link("a", "b", "r"))
+                .add(link("b", "c", "p")).add(link("c", "d", "p")).add(link("c", "d", "q")).build();
+        LinkSet s2 = new LinkSet.Builder(codec).add(link("a", "b", "s")).add(link("c", "d", "p")).add(link("d", "e", "p")).build();
+        assertEquals(3, s1.countPairs());
+        assertEquals(2, s1.countMultiRelationPairs());
+        assertEquals(3, s2.countPairs());
+        assertEquals(0, s2.countMultiRelationPairs());
+        assertEquals(2, s1.countSharedPairs(s2));
+        assertEquals(2, s2.countSharedPairs(s1));
+    }
+
+    public void testSortByIri() {
+        LinkCodec codec = new LinkCodec();
+        LinkBetweenEntity[] sorted = {link("a", "b", "p"), link("a", "b", "q"), link("a", "c", "p"), link("b", "a", "p"), link("c", "a", "p")};
+        LinkSet.Builder b = new LinkSet.Builder(codec);
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            b.add(sorted[i]);
+        }
+        long[] links = b.build().toArray();
+        codec.freeze();
+        codec.sortByIri(links);
+        for (int i = 0; i < sorted.length; i++) {
+            assertEquals(sorted[i], codec.decode(links[i]));
+        }
+    }
+
+    public void testLinkSetsOfDifferentCodecsCannotBeCombined() {
+        LinkSet s1 = new LinkSet.Builder(new LinkCodec()).add(link("a", "b", "p")).build();
+        LinkSet s2 = new LinkSet.Builder(new LinkCodec()).add(link("a", "b", "p")).build();
+        try {
+            s1.union(s2);
+            fail("Combined sets of different codecs");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class MappedTsvReaderTest extends TestCase {
+
+    private MappedTsvReader read(String content) throws IOException {
+        File file = File.createTempFile("mappedtsv", ".tsv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new MappedTsvReader(file);
+    }
+
+    public void testRows() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\nA:1\tone\nA:2\ttwo\n")) {
+            assertEquals(2, tsv.size());
+            assertEquals(1, tsv.getColumn("label"));
+            assertEquals(-1, tsv.getColumn("missing"));
+            assertEquals("A:2", tsv.getRow(1).get("id"));
+            assertEquals("one", tsv.getRow(0).get(1));
+            assertEquals("A:1\tone", tsv.getRow(0).toString());
+        }
+    }
+
+    public void testCrlfLineEndings() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\r\nA:1\tone\r\nA:2\ttwo\r\n")) {
+            assertEquals("label", tsv.getHeader()[1]);
+            assertEquals(2, tsv.size());
+            assertEquals("one", tsv.getRow(0).get("label"));
+            assertEquals("two", tsv.getRow(1).get("label"));
+        }
+    }
+
+    public void testMissingTrailingNewline() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\nA:1\tone\nA:2\ttwo")) {
+            assertEquals(2, tsv.size());
+            assertEquals("two", tsv.getRow(1).get("label"));
+        }
+        try (MappedTsvReader tsv = read("id\tlabel\r\nA:1\tone\r")) {
+            assertEquals(1, tsv.size());
+            assertEquals("one", tsv.getRow(0).get("label"));
+        }
+    }
+
+    public void testShortAndLongRows() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\tdef\nA:1\nA:2\tdos\nA:3\ttres\tthree\textra\n")) {
+            assertEquals(1, tsv.getRow(0).size());
+            assertEquals("", tsv.getRow(0).get("label"));
+            assertEquals("", tsv.getRow(1).get("def"));
+            assertEquals("dos", tsv.getRow(1).get("label"));
+            assertEquals(4, tsv.getRow(2).size());
+            assertEquals("extra", tsv.getRow(2).get(3));
+        }
+    }
+
+    public void testEmptyFields() throws IOException {
+        try (MappedTsvReader tsv = read("a\tb\tc\n\t\t\n")) {
+            assertEquals(3, tsv.getRow(0).size());
+            assertEquals("", tsv.getRow(0).get(0));
+            assertEquals("", tsv.getRow(0).get(2));
+        }
+    }
+
+    public void testEmptyFile() throws IOException {
+        try (MappedTsvReader tsv = read("")) {
+            assertEquals(0, tsv.getHeader().length);
+            assertTrue(tsv.isEmpty());
+            assertFalse(tsv.iterator().hasNext());
+        }
+    }
+
+    public void testHeaderOnly() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\n")) {
+            assertEquals(2, tsv.getHeader().length);
+            assertTrue(tsv.isEmpty());
+            try {
+                tsv.getRow(0);
+                fail("Read a row from a file without rows");
+            } catch (IndexOutOfBoundsException expected) {
+            }
+        }
+    }
+
+    public void testUtf8() throws IOException {
+        try (MappedTsvReader tsv = read("id\tlabel\nA:1\tChédiak–Higashi\tµ\n")) {
+            assertEquals("Chédiak–Higashi", tsv.getRow(0).get("label"));
+            assertEquals("µ", tsv.getRow(0).get(2));
+        }
+    }
+
+    public void testIterator() throws IOException {
+        try (MappedTsvReader tsv = read("id\nA:1\nA:2\n")) {
+            Iterator<MappedTsvReader.Row> it = tsv.iterator();
+            assertEquals("A:1", it.next().get(0));
+            assertEquals("A:2", it.next().get(0));
+            assertFalse(it.hasNext());
+            try {
+                it.next();
+                fail("Iterated past the last row");
+            } catch (NoSuchElementException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package monarch.ebi.phenotype.utils;
+
+import junit.framework.TestCase;
+
+public class PrefixTrieTest extends TestCase {
+
+    private PrefixTrie<String> trie() {
+        PrefixTrie<String> trie = new PrefixTrie<>();
+        trie.put("http://purl.obolibrary.org/obo/", "obo");
+        trie.put("http://purl.obolibrary.org/obo/UBERON_", "uberon");
+        trie.put("http://purl.obolibrary.org/obo/UBERON_000", "uberon_000");
+        trie.put("http://www.ebi.ac.uk/efo/", "efo");
+        return trie;
+    }
+
+    public void testLongestPrefixMatch() {
+        PrefixTrie<String> trie = trie();
+        assertEquals("uberon_000", trie.longestPrefixMatch("http://purl.obolibrary.org/obo/UBERON_0000948"));
+        assertEquals("uberon", trie.longestPrefixMatch("http://purl.obolibrary.org/obo/UBERON_1000000"));
+        assertEquals("obo", trie.longestPrefixMatch("http://purl.obolibrary.org/obo/MP_0000001"));
+        assertEquals("efo", trie.longestPrefixMatch("http://www.ebi.ac.uk/efo/EFO_0000001"));
+    }
+
+    public void testPrefixItselfMatches() {
+        assertEquals("uberon", trie().longestPrefixMatch("http://purl.obolibrary.org/obo/UBERON_"));
+    }
+
+    public void testNoMatch() {
+        PrefixTrie<String> trie = trie();
+        assertNull(trie.longestPrefixMatch("http://purl.obolibrary.org/ob"));
+        assertNull(trie.longestPrefixMatch(""));
+        assertFalse(trie.matchesPrefix("http://example.org/A"));
+        assertTrue(trie.matchesPrefix("http://purl.obolibrary.org/obo/GO_0008150"));
+    }
+
+    public void testEmptyPrefixMatchesEverything() {
+        PrefixTrie<String> trie = trie();
+        trie.put("", "any");
+        assertEquals("any", trie.longestPrefixMatch("http://example.org/A"));
+        assertEquals("any", trie.longestPrefixMatch(""));
+        assertTrue(trie.matchesPrefix("x"));
+        assertEquals("obo", trie.longestPrefixMatch("http://purl.obolibrary.org/obo/GO_0008150"));
+    }
+
+    public void testPutReplacesValue() {
+        PrefixTrie<String> trie = trie();
+        assertEquals(4, trie.size());
+        trie.put("http://www.ebi.ac.uk/efo/", "efo2");
+        assertEquals(4, trie.size());
+        assertEquals("efo2", trie.longestPrefixMatch("http://www.ebi.ac.uk/efo/EFO_0000001"));
+    }
+
+    public void testChildrenKeptSorted() {
+        PrefixTrie<Integer> trie = new PrefixTrie<>();
+        String keys = "zmaqbyc";
+        for (int i = 0; i < keys.length(); i++) {
+            trie.put(keys.substring(i, i + 1), i);
+        }
+        for (int i = 0; i < keys.length(); i++) {
+            assertEquals(Integer.valueOf(i), trie.longestPrefixMatch(keys.charAt(i) + "rest"));
+        }
+        assertNull(trie.longestPrefixMatch("d"));
+    }
+}